@@ -1,16 +1,15 @@
 package io.github.ai4ci;
 
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Optional;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
 import java.util.function.Function;
 import java.util.stream.Stream;
 
-import org.apache.commons.lang3.SerializationUtils;
-
 import io.github.ai4ci.stats.Sampler;
+import io.github.ai4ci.stats.SplitMix64;
 
 /**
  * 
@@ -42,8 +41,11 @@ public abstract class RAgent<
 	T status;
 	T oldStatus;
 	B baseline;
-	ConcurrentMap<String, RAgentObserver<A,?>> observers = new ConcurrentHashMap<>();
-	transient ConcurrentMap<String,Object> cache = new ConcurrentHashMap<>();
+	List<RAgentObserver<A,?>> observers = new ArrayList<>();
+	transient RAgentObserver<A,?>[] observerSlots;
+	transient CacheEntry[] cache;
+	transient long cacheEpoch;
+	transient Sampler stepSampler;
 	
 	
 	/**
@@ -129,7 +131,11 @@ public abstract class RAgent<
 	}
 	
 	public String getUrn() {
-		return this.getSimulation().getUrn()+":agent:"+getId();
+		return urn(this.getSimulation().getUrn(), getId());
+	}
+	
+	static String urn(String simulationUrn, int id) {
+		return simulationUrn+":agent:"+id;
 	}
 	
 	/** 
@@ -162,20 +168,119 @@ public abstract class RAgent<
 	
 	public S getSimulation() {return simulation;}
 	
-	public Sampler sampler() {return getSimulation().sampler();}
+	/**
+	 * When agents are stepped together by an RAgentStepper each agent has its
+	 * own random stream, otherwise this is the simulation's sampler. 
+	 */
+	public Sampler sampler() {
+		if (stepSampler != null) return stepSampler;
+		return getSimulation().sampler();
+	}
+	
+	/**
+	 * Positions this agent's random stream for the given step. The stream 
+	 * depends only on the simulation seed, the agent id and the step so does
+	 * not depend on the order agents are stepped in.
+	 */
+	protected void resetSampler(long step) {
+		long seed = SplitMix64.seedFrom(getSimulation().getSeed(), id, step);
+		if (stepSampler == null) stepSampler = Sampler.withSeed(seed);
+		else stepSampler.setSeed(seed);
+	}
+	
+	/**
+	 * A random stream for this agent for a given purpose (any number unique
+	 * within the model) at the current step. With common random numbers (see
+	 * RSimulation.setCommonRandomNumbers) this is the same for every
+	 * parameterisation, otherwise it is this agent's sampler. This is for 
+	 * draws where the number of draws made for the purpose does not depend 
+	 * on the parameterisation, otherwise see `commonUniform()`.
+	 */
+	public Sampler commonSampler(long purpose) {
+		S sim = getSimulation();
+		if (!sim.isCommonRandomNumbers()) return sampler();
+		return Sampler.substream(sim.getCommonSeed(), id, sim.getSchedule().getSteps(), purpose);
+	}
+	
+	/**
+	 * A uniform random number for a single trial, identified by a purpose and
+	 * a key (e.g. the id of another agent involved) at the current step. 
+	 * With common random numbers this is the same for every 
+	 * parameterisation regardless of what other draws are made, so that e.g.
+	 * a transmission between the same two people on the same day succeeds
+	 * in each parameterisation unless the probability differs. Otherwise this
+	 * is the next value from this agent's sampler.
+	 */
+	public double commonUniform(long purpose, long key) {
+		S sim = getSimulation();
+		if (!sim.isCommonRandomNumbers()) return sampler().uniform();
+		long tmp = SplitMix64.seedFrom(sim.getCommonSeed(), id, sim.getSchedule().getSteps(), purpose, key);
+		return (tmp >>> 11) * 0x1.0p-53;
+	}
+	
+	/**
+	 * Run part of the setup of this agent with its own random stream, which
+	 * depends on the simulation seed, the agent id and the stage, so that 
+	 * agents can be set up in any order or in parallel with the same result.
+	 * Stages are numbered negatively so these do not overlap the streams
+	 * used for stepping. With common random numbers the stream does not 
+	 * depend on the parameterisation.
+	 */
+	void setupWithSubstream(int stage, Runnable setup) {
+		Sampler tmp = stepSampler;
+		S sim = getSimulation();
+		stepSampler = Sampler.substream(sim.isCommonRandomNumbers() ? sim.getCommonSeed() : sim.getSeed(), id, -stage);
+		try {
+			setup.run();
+		} finally {
+			stepSampler = tmp;
+		}
+	}
+	
+	/**
+	 * The cache and observer layout for this type of agent.
+	 */
+	public RAgentSchema getSchema() {
+		return RAgentSchema.of(this.getClass());
+	}
 	
 	// @Override
 	public Stream<RAgentObserver<A,?>> getObservers() {
-		return observers.values().stream();
+		return observers.stream();
 	}
 	
 	// @Override
 	@SafeVarargs
 	public final void registerNamedObserver(RAgentObserver<A,?>... observers) {
 		for (RAgentObserver<A,?> observer: observers) {
-			this.observers.put(observer.getName(), observer);
+			this.observers.removeIf(o -> o.getName().equals(observer.getName()));
+			this.observers.add(observer);
 			observer.setSubject(self());
 		}
+		this.observerSlots = null;
+	}
+	
+	/**
+	 * Look up a named observer by its slot in the schema. The slot array is 
+	 * rebuilt from the list of observers when needed (e.g. after 
+	 * deserialization), as slots are only fixed within one JVM.
+	 */
+	private RAgentObserver<A,?> getObserver(String name) {
+		RAgentSchema schema = getSchema();
+		int slot = schema.observerSlot(name);
+		RAgentObserver<A,?>[] tmp = this.observerSlots;
+		if (tmp == null || slot >= tmp.length) {
+			for (RAgentObserver<A,?> o: observers) schema.observerSlot(o.getName());
+			tmp = observerArray(schema.observerSize());
+			for (RAgentObserver<A,?> o: observers) tmp[schema.observerSlot(o.getName())] = o;
+			this.observerSlots = tmp;
+		}
+		return tmp[slot];
+	}
+	
+	@SuppressWarnings("unchecked")
+	private static <A extends RAgent<A,?,?,?>> RAgentObserver<A,?>[] observerArray(int size) {
+		return (RAgentObserver<A,?>[]) new RAgentObserver<?,?>[size];
 	}
 	
 	@SuppressWarnings("unchecked")
@@ -210,35 +315,120 @@ public abstract class RAgent<
 		);
 	}
 
-	@SuppressWarnings("unchecked")
 	public <X> Optional<X> cached(String name, Class<X> type, Function<A,Optional<X>> mapper) {
-		if (this.cache == null) this.cache = new ConcurrentHashMap<>();
-		if (!cache.containsKey(name)) {
-			Optional<X> tmp = mapper.apply((A) RAgent.this);
-			cache.put(name, tmp);
+		return cached(getSchema().cacheSlot(name), type, mapper);
+	}
+	
+	public <X> List<X> cachedList(String name, Class<X> subtype, Function<A,List<X>> mapper) {
+		return cachedList(getSchema().cacheSlot(name), subtype, mapper);
+	}
+	
+	@SuppressWarnings("unchecked")
+	public <X> Optional<X> cached(RAgentSchema.Slot slot, Class<X> type, Function<A,Optional<X>> mapper) {
+		return (Optional<X>) fromCache(slot, mapper);
+	}
+	
+	@SuppressWarnings("unchecked")
+	public <X> List<X> cachedList(RAgentSchema.Slot slot, Class<X> subtype, Function<A,List<X>> mapper) {
+		return (List<X>) fromCache(slot, mapper);
+	}
+	
+	/**
+	 * A value that is kept from step to step, and only recalculated when one 
+	 * of the dependencies declared by the slot changes. This must only be 
+	 * used where the value is fully determined by the declared dependencies.
+	 */
+	@SuppressWarnings("unchecked")
+	public <X> Optional<X> memoised(RAgentSchema.Memo<A> slot, Class<X> type, Function<A,Optional<X>> mapper) {
+		return (Optional<X>) fromMemo(slot, mapper);
+	}
+	
+	@SuppressWarnings("unchecked")
+	public <X> List<X> memoisedList(RAgentSchema.Memo<A> slot, Class<X> subtype, Function<A,List<X>> mapper) {
+		return (List<X>) fromMemo(slot, mapper);
+	}
+	
+	@SuppressWarnings("unchecked")
+	private Object fromMemo(RAgentSchema.Memo<A> slot, Function<A,?> mapper) {
+		int index = slot.getIndex();
+		CacheEntry[] tmp = this.cache;
+		if (tmp != null && index < tmp.length) {
+			CacheEntry entry = tmp[index];
+			if (entry != null && entry.keys != null && slot.matches((A) this, entry.keys, entry.instances)) {
+				slot.hit();
+				return entry.value;
+			}
 		}
-		return (Optional<X>) cache.get(name);
+		slot.miss();
+		long[] keys = slot.keys((A) this);
+		Object[] instances = slot.instances((A) this);
+		Object value = mapper.apply((A) RAgent.this);
+		store(index, new CacheEntry(cacheEpoch, keys, instances, value));
+		return value;
 	}
 	
 	@SuppressWarnings("unchecked")
-	public <X> List<X> cachedList(String name, Class<X> subtype, Function<A,List<X>> mapper) {
-		if (this.cache == null) this.cache = new ConcurrentHashMap<>();
-		if (!cache.containsKey(name)) {
-			List<X> tmp = mapper.apply((A) RAgent.this);
-			cache.put(name, tmp);
+	private Object fromCache(RAgentSchema.Slot slot, Function<A,?> mapper) {
+		int index = slot.getIndex();
+		CacheEntry[] tmp = this.cache;
+		if (tmp != null && index < tmp.length) {
+			CacheEntry entry = tmp[index];
+			if (entry != null && entry.epoch == cacheEpoch) {
+				slot.hit();
+				return entry.value;
+			}
 		}
-		return (List<X>) cache.get(name);
+		slot.miss();
+		long epoch = cacheEpoch;
+		Object value = mapper.apply((A) RAgent.this);
+		store(index, new CacheEntry(epoch, null, null, value));
+		return value;
 	}
 	
+	private void store(int index, CacheEntry entry) {
+		CacheEntry[] tmp = this.cache;
+		if (tmp == null || index >= tmp.length) {
+			synchronized(this) {
+				tmp = this.cache;
+				int size = Math.max(index+1, getSchema().cacheSize());
+				if (tmp == null) tmp = new CacheEntry[size];
+				else if (index >= tmp.length) tmp = Arrays.copyOf(tmp, size);
+				this.cache = tmp;
+			}
+		}
+		tmp[index] = entry;
+	}
+	
+	/**
+	 * Invalidates everything in the cache, by moving it to a new epoch. 
+	 * Memoised values are not affected.
+	 */
 	protected void clearCache() {
-		if (this.cache == null) this.cache = new ConcurrentHashMap<>();
-		this.cache.clear();
+		this.cacheEpoch += 1;
+	}
+	
+	/**
+	 * An immutable cache value stamped with the epoch it was calculated in, or
+	 * for memoised values the dependency keys it was calculated from.
+	 * As this is immutable it can be safely read from other threads. 
+	 */
+	private static class CacheEntry {
+		final long epoch;
+		final long[] keys;
+		final Object[] instances;
+		final Object value;
+		CacheEntry(long epoch, long[] keys, Object[] instances, Object value) {
+			this.epoch = epoch;
+			this.keys = keys;
+			this.instances = instances;
+			this.value = value;
+		}
 	}
 	
 	// @Override
 	@SuppressWarnings("unchecked")
 	public <X> List<X> getNamedObservation(Enum<?> name, Class<X> type) {
-		RAgentObserver<A,?> obs = this.observers.get(name.name());
+		RAgentObserver<A,?> obs = this.getObserver(name.name());
 		if (obs == null) throw new RuntimeException("Observer name not defined in simulation: "+name);
 		if (!obs.getObservationType().equals(type)) throw new RuntimeException("Incorrect type specified for observer of name: "+name+" ["+type.getName()+" requested; "+obs.getObservationType()+" found]");
 		return (List<X>) obs.getObservation();
@@ -246,7 +436,7 @@ public abstract class RAgent<
 	
 	@SuppressWarnings("unchecked")
 	public <X> Optional<X> getLastNamedObservation(Enum<?> name, Class<X> type) {
-		RAgentObserver<A,?> obs = this.observers.get(name.name());
+		RAgentObserver<A,?> obs = this.getObserver(name.name());
 		if (obs == null) throw new RuntimeException("Observer name not defined in simulation: "+name);
 		if (!obs.getObservationType().equals(type)) throw new RuntimeException("Incorrect type specified for observer of name: "+name+" ["+type.getName()+" requested; "+obs.getObservationType()+" found]");
 		return (Optional<X>) obs.getLastObservation();
@@ -254,7 +444,7 @@ public abstract class RAgent<
 	
 	@SuppressWarnings("unchecked")
 	public <X> List<List<? extends X>> getNamedListObservation(Enum<?> name, Class<X> subtype) {
-		RAgentObserver<A,?> obs = this.observers.get(name.name());
+		RAgentObserver<A,?> obs = this.getObserver(name.name());
 		if (obs == null) throw new RuntimeException("Observer name not defined in simulation: "+name);
 		if (!obs.getObservationType().equals(subtype)) throw new RuntimeException("Incorrect type specified for observer of name: "+name+" ["+subtype.getName()+" requested; "+obs.getObservationType()+" found]");
 		if (!(obs instanceof RObserver.OfLists)) {
@@ -330,8 +520,20 @@ public abstract class RAgent<
 		}
 	}
 
+	/**
+	 * Snapshot the current status into oldStatus. After the first step this
+	 * is a field by field copy into the existing oldStatus instance (see 
+	 * RFieldCopier) rather than a new clone. If the status is a view on a 
+	 * RColumnStore this is not needed. 
+	 */
+	@SuppressWarnings("unchecked")
 	public void copyStatus() {
-		this.oldStatus = SerializationUtils.clone(status);
+		if (status instanceof RColumnStore.View) {
+			// The store is snapshotted by the simulation.
+			if (oldStatus == null) oldStatus = ((RColumnStore.View<T>) status).previous();
+			return;
+		}
+		this.oldStatus = RFieldCopier.snapshot(status, oldStatus);
 	}
 	
 }
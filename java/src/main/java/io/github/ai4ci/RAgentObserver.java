@@ -1,12 +1,10 @@
 package io.github.ai4ci;
 
 import java.io.Serializable;
-import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
 import java.util.function.Function;
-import java.util.stream.Collectors;
 
 public abstract class RAgentObserver<
 	A extends RAgent<A,?,?,?>, 
@@ -49,7 +47,7 @@ public abstract class RAgentObserver<
 	
 	public static class History<A extends RAgent<A,?,?,?>,X>  extends RAgentObserver<A,X> {
 
-		List<X> x = new ArrayList<>();
+		RHistoryBuffer<X> x;
 		Mapper<A,X> mapper;
 		Class<X> type;
 		Integer maxElements;
@@ -57,10 +55,7 @@ public abstract class RAgentObserver<
 		@Override
 		public void update(A subject) {
 			Optional<X> tmp = mapper.apply(subject);
-			if (tmp.isPresent()) x.add(0, tmp.get());
-			while (maxElements != null && x.size() > maxElements) {
-				x.remove((int) maxElements);
-			}
+			if (tmp.isPresent()) x.push(tmp.get());
 		}
 
 		@Override
@@ -68,6 +63,11 @@ public abstract class RAgentObserver<
 			return x;
 		}
 
+		@Override
+		public Optional<X> getLastObservation() {
+			return x.isEmpty() ? Optional.empty() : Optional.of(x.get(0));
+		}
+
 		@Override
 		public Class<X> getObservationType() {
 			return type;
@@ -78,6 +78,7 @@ public abstract class RAgentObserver<
 			this.type = type;
 			this.mapper = mapper;
 			this.maxElements = maxElements;
+			this.x = RHistoryBuffer.of(type, maxElements);
 		}
 		
 	}
@@ -118,7 +119,8 @@ public abstract class RAgentObserver<
 
 	public static class ListHistory<A extends RAgent<A,?,?,?>,X>  extends RAgentObserver<A,X> implements RObserver.OfLists<A, X> {
 
-		List<List<? extends X>> x = new ArrayList<>();
+		RHistoryBuffer<List<? extends X>> x;
+		transient List<X> flattened;
 		ListMapper<A,X> mapper;
 		Class<X> subtype;
 		Integer maxElements;
@@ -126,15 +128,15 @@ public abstract class RAgentObserver<
 		@Override
 		public void update(A subject) {
 			List<? extends X> tmp = mapper.apply(subject);
-			x.add(0, tmp);
-			while (maxElements != null && x.size() > maxElements) {
-				x.remove((int) maxElements);
-			}
+			x.push(tmp);
+			flattened = null;
 		}
 
 		@Override
 		public List<X> getObservation() {
-			return x.stream().flatMap(y -> y.stream()).collect(Collectors.toList());
+			// a snapshot, made at most once per update
+			if (flattened == null) flattened = RHistoryBuffer.flatten(x);
+			return flattened;
 		}
 
 		public List<List<? extends X>> getObservationList() {
@@ -151,6 +153,7 @@ public abstract class RAgentObserver<
 			this.subtype = subtype;
 			this.mapper = mapper;
 			this.maxElements = maxElements;
+			this.x = new RHistoryBuffer.OfObject<>(maxElements);
 		}
 		
 	}
@@ -0,0 +1,211 @@
+package io.github.ai4ci;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
+
+/**
+ * The layout of the per agent cache and named observers for a type of agent.
+ * Cache keys and observer names are given an integer slot once per agent
+ * class, and each agent stores its cached values and observers in arrays
+ * indexed by slot, rather than in a map per agent.
+ *
+ * Slots can be declared up front in the agent class, e.g.:
+ *
+ * static final RAgentSchema.Slot CONTACTS = RAgentSchema.of(Person.class).cacheSlot("contacts");
+ *
+ * and used with `cached(CONTACTS, ...)`, or are allocated the first time a
+ * string key is seen by `cached("contacts", ...)`. Each cache slot counts its
+ * hits and misses across all agents of the type. Memoised slots (see 
+ * `memoSlot()`) declare what they depend on, and are not cleared each step.
+ */
+public class RAgentSchema {
+
+	private static ConcurrentMap<Class<?>, RAgentSchema> schemas = new ConcurrentHashMap<>();
+
+	private Class<?> agentType;
+	private ConcurrentMap<String, Slot> cacheSlots = new ConcurrentHashMap<>();
+	private List<Slot> cacheSlotList = new ArrayList<>();
+	private ConcurrentMap<String, Integer> observerSlots = new ConcurrentHashMap<>();
+
+	private RAgentSchema(Class<?> agentType) {
+		this.agentType = agentType;
+	}
+
+	/**
+	 * The schema for a specific agent class
+	 */
+	public static RAgentSchema of(Class<?> agentType) {
+		return schemas.computeIfAbsent(agentType, t -> new RAgentSchema(t));
+	}
+
+	public Class<?> getAgentType() {
+		return agentType;
+	}
+
+	/**
+	 * Get or create the cache slot with this name.
+	 */
+	public Slot cacheSlot(String name) {
+		Slot tmp = cacheSlots.get(name);
+		if (tmp != null) return tmp;
+		synchronized(this) {
+			return cacheSlots.computeIfAbsent(name, n -> {
+				Slot s = new Slot(n, cacheSlotList.size());
+				cacheSlotList.add(s);
+				return s;
+			});
+		}
+	}
+
+	/**
+	 * Get or create a memoised cache slot. Values in this slot are kept
+	 * across steps and only recalculated when one of the dependencies gives a
+	 * different value to when it was last calculated. Dependencies are
+	 * functions of the agent that reduce e.g. a status field to a long, see
+	 * the `key()` methods. 
+	 */
+	public <A> Memo<A> memoSlot(String name, ToLongFunction<A> dependsOn) {
+		return memoSlot(name, Collections.singletonList(dependsOn), Collections.emptyList());
+	}
+	
+	/**
+	 * Get or create a memoised cache slot, which as well as values may depend
+	 * on objects that are replaced rather than changed, e.g. a 
+	 * DelayDistribution parameter. These are held by reference and the value
+	 * is recalculated when any of them is no longer the same instance.
+	 */
+	@SuppressWarnings("unchecked")
+	public <A> Memo<A> memoSlot(String name, List<ToLongFunction<A>> dependsOn, List<Function<A,?>> dependsOnInstance) {
+		synchronized(this) {
+			Slot tmp = cacheSlots.computeIfAbsent(name, n -> {
+				Slot s = new Memo<A>(n, cacheSlotList.size(), dependsOn, dependsOnInstance);
+				cacheSlotList.add(s);
+				return s;
+			});
+			if (!(tmp instanceof Memo)) throw new RuntimeException("Cache slot "+name+" is already defined and is not memoised");
+			return (Memo<A>) tmp;
+		}
+	}
+	
+	public synchronized int cacheSize() {
+		return cacheSlotList.size();
+	}
+
+	/**
+	 * The cache slots with their hit and miss counts.
+	 */
+	public synchronized List<Slot> getCacheSlots() {
+		return Collections.unmodifiableList(new ArrayList<>(cacheSlotList));
+	}
+
+	/**
+	 * Get or create the slot for a named observer.
+	 */
+	public int observerSlot(String name) {
+		Integer tmp = observerSlots.get(name);
+		if (tmp != null) return tmp;
+		synchronized(this) {
+			return observerSlots.computeIfAbsent(name, n -> observerSlots.size());
+		}
+	}
+
+	public int observerSize() {
+		return observerSlots.size();
+	}
+
+	public String toString() {
+		StringBuilder out = new StringBuilder(agentType.getSimpleName()+" cache:");
+		getCacheSlots().forEach(s -> out.append("\n\t"+s.toString()));
+		return out.toString();
+	}
+
+	public static long key(double value) {
+		return Double.doubleToLongBits(value);
+	}
+	
+	public static long key(Enum<?> value) {
+		return value == null ? -1 : value.ordinal();
+	}
+	
+	/**
+	 * A cache slot.
+	 */
+	public static class Slot {
+
+		private String name;
+		private int index;
+		private LongAdder hits = new LongAdder();
+		private LongAdder misses = new LongAdder();
+
+		private Slot(String name, int index) {
+			this.name = name;
+			this.index = index;
+		}
+
+		public String getName() {return name;}
+		public int getIndex() {return index;}
+		public long getHits() {return hits.sum();}
+		public long getMisses() {return misses.sum();}
+
+		void hit() {hits.increment();}
+		void miss() {misses.increment();}
+
+		public void resetCounts() {
+			hits.reset();
+			misses.reset();
+		}
+
+		public String toString() {
+			return name+" ["+index+"]: "+getHits()+" hits; "+getMisses()+" misses";
+		}
+	}
+	
+	/**
+	 * A cache slot with declared dependencies.
+	 */
+	public static class Memo<A> extends Slot {
+		
+		private List<ToLongFunction<A>> dependsOn;
+		private List<Function<A,?>> dependsOnInstance;
+		
+		private Memo(String name, int index, List<ToLongFunction<A>> dependsOn, List<Function<A,?>> dependsOnInstance) {
+			super(name, index);
+			this.dependsOn = new ArrayList<>(dependsOn);
+			this.dependsOnInstance = new ArrayList<>(dependsOnInstance);
+		}
+		
+		public long[] keys(A agent) {
+			long[] out = new long[dependsOn.size()];
+			for (int i=0; i<out.length; i++) out[i] = dependsOn.get(i).applyAsLong(agent);
+			return out;
+		}
+		
+		/**
+		 * The instances the value depends on, or null if there are none.
+		 */
+		public Object[] instances(A agent) {
+			if (dependsOnInstance.isEmpty()) return null;
+			Object[] out = new Object[dependsOnInstance.size()];
+			for (int i=0; i<out.length; i++) out[i] = dependsOnInstance.get(i).apply(agent);
+			return out;
+		}
+		
+		public boolean matches(A agent, long[] keys, Object[] instances) {
+			for (int i=0; i<keys.length; i++) {
+				if (dependsOn.get(i).applyAsLong(agent) != keys[i]) return false;
+			}
+			if (instances != null) {
+				for (int i=0; i<instances.length; i++) {
+					if (dependsOnInstance.get(i).apply(agent) != instances[i]) return false;
+				}
+			}
+			return true;
+		}
+	}
+}
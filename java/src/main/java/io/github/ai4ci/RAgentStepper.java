@@ -0,0 +1,108 @@
+package io.github.ai4ci;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Steps a band of agents (i.e. all the active agents with the same priority)
+ * as a single unit of work in the schedule, rather than scheduling each agent
+ * separately. This is used when the simulation is set up with 
+ * `setStepThreads(n)` for some n > 0.
+ * 
+ * The agent list is partitioned across the simulation's fork/join pool and
+ * each partition is stepped concurrently. This relies on agents only reading
+ * the state of other agents via `getOldStatus()`, which is fixed at the start
+ * of the step, and only writing their own status. Before each agent is stepped
+ * its random stream is reset to a position that depends only on the simulation
+ * seed, the agent id and the step, so the result does not depend on how the
+ * agents are partitioned or how many threads are used.
+ * 
+ * All partitions are joined before this returns, and so before any "after" 
+ * steppables such as the named observers are run.
+ */
+public class RAgentStepper<
+		S extends RSimulation<S,?,?,A>,
+		A extends RAgent<A,S,?,?>
+	> implements RSteppable<S> {
+
+	int priority;
+	List<A> agents = new ArrayList<>();
+	
+	public RAgentStepper(int priority) {
+		this.priority = priority;
+	}
+	
+	public void add(A agent) {
+		agents.add(agent);
+	}
+	
+	public int size() {
+		return agents.size();
+	}
+	
+	@Override
+	public int getPriority() {return priority;}
+	
+	@Override
+	public void doStep(S simulation) {
+		long step = simulation.getSimTime();
+		int threads = simulation.getStepThreads();
+		if (threads <= 1 || agents.size() < 2) {
+			stepRange(simulation, step, 0, agents.size());
+		} else {
+			int threshold = Math.max(64, agents.size() / (threads*4));
+			simulation.getStepPool().invoke(new Partition(simulation, step, 0, agents.size(), threshold));
+		}
+		// Drop any agents that are finished. This is done after the join so 
+		// the order of the remaining agents is preserved.
+		List<A> remaining = new ArrayList<>(agents.size());
+		for (A agent: agents) {
+			if (agent.remainsActive(simulation)) remaining.add(agent);
+		}
+		agents = remaining;
+	}
+	
+	private void stepRange(S simulation, long step, int from, int to) {
+		for (int i=from; i<to; i++) {
+			A agent = agents.get(i);
+			agent.resetSampler(step);
+			agent.doStep(simulation);
+		}
+	}
+	
+	@Override
+	public boolean remainsActive(S simulation) {
+		return !agents.isEmpty();
+	}
+	
+	private class Partition extends RecursiveAction {
+		
+		S simulation;
+		long step;
+		int from;
+		int to;
+		int threshold;
+		
+		Partition(S simulation, long step, int from, int to, int threshold) {
+			this.simulation = simulation;
+			this.step = step;
+			this.from = from;
+			this.to = to;
+			this.threshold = threshold;
+		}
+		
+		@Override
+		protected void compute() {
+			if (to - from <= threshold) {
+				stepRange(simulation, step, from, to);
+			} else {
+				int mid = (from + to) >>> 1;
+				invokeAll(
+					new Partition(simulation, step, from, mid, threshold),
+					new Partition(simulation, step, mid, to, threshold)
+				);
+			}
+		}
+	}
+}
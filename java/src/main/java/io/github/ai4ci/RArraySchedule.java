@@ -0,0 +1,97 @@
+package io.github.ai4ci;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+
+import sim.engine.SimState;
+import sim.engine.Steppable;
+
+/**
+ * A fixed time step RSchedule. Things scheduled for the next step are held in
+ * a plain list per priority band, and on every step each band's list is
+ * swapped out and swept in the order things were scheduled. This avoids the
+ * per item heap insert and removal of the MASON schedule, and the MASON
+ * shuffling of items with the same ordering, so agents are stepped in a
+ * fixed order (i.e. their id order, if they were scheduled that way).
+ *
+ * As with the MASON schedule `scheduleOnce` during a step schedules for the
+ * following step, and before and after hooks are run around each step.
+ */
+public class RArraySchedule implements RSchedule {
+
+	private long steps = 0;
+	private List<Steppable> before = new ArrayList<>();
+	private List<Steppable> after = new ArrayList<>();
+	private TreeMap<Integer, Band> bands = new TreeMap<>();
+	private int scheduled = 0;
+
+	private static class Band implements Serializable {
+		List<Steppable> current = new ArrayList<>();
+		List<Steppable> next = new ArrayList<>();
+
+		void swap() {
+			List<Steppable> tmp = current;
+			tmp.clear();
+			current = next;
+			next = tmp;
+		}
+	}
+
+	@Override
+	public long getSteps() {
+		return steps;
+	}
+
+	@Override
+	public synchronized boolean scheduleOnce(Steppable steppable, int priority) {
+		Band band = bands.get(priority);
+		if (band == null) {
+			band = new Band();
+			bands.put(priority, band);
+		}
+		band.next.add(steppable);
+		scheduled += 1;
+		return true;
+	}
+
+	@Override
+	public void addBefore(Steppable steppable) {
+		before.add(steppable);
+	}
+
+	@Override
+	public void addAfter(Steppable steppable) {
+		after.add(steppable);
+	}
+
+	@Override
+	public boolean step(SimState state) {
+		if (scheduled == 0) return false;
+		synchronized(this) {
+			for (Band band: bands.values()) band.swap();
+			scheduled = 0;
+		}
+		for (int i=0; i<before.size(); i++) before.get(i).step(state);
+		// New bands may be added while this is iterating, but anything added
+		// is for the next step.
+		for (Band band: new ArrayList<>(bands.values())) {
+			List<Steppable> current = band.current;
+			for (int i=0; i<current.size(); i++) current.get(i).step(state);
+		}
+		for (int i=0; i<after.size(); i++) after.get(i).step(state);
+		steps += 1;
+		return true;
+	}
+
+	@Override
+	public synchronized void reset() {
+		steps = 0;
+		before.clear();
+		after.clear();
+		bands.clear();
+		scheduled = 0;
+	}
+
+}
@@ -0,0 +1,168 @@
+package io.github.ai4ci;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A struct-of-arrays store for agent state. Each column is a primitive array
+ * indexed by agent id, which is double buffered so that the previous step's
+ * values are available in the same way as `RAgent.getOldStatus()`. This is
+ * intended to be used by RAgentStatus implementations that are thin views on
+ * a row of the store (see `View`) rather than java beans, which saves holding
+ * a status and old status object per agent and lets the simulation scan a
+ * single column rather than every agent.
+ *
+ * The simulation registers its store with `RSimulation.setColumnStore()` and
+ * the whole store is snapshotted with one array copy per column at the
+ * start of each step, instead of each agent copying its own status.
+ *
+ * Writes to different rows from different threads are safe as long as they
+ * are joined before the values are read, as they are by RAgentStepper.
+ */
+public class RColumnStore implements Serializable {
+
+	private int size;
+	private List<Column> columns = new ArrayList<>();
+
+	public RColumnStore(int size) {
+		this.size = size;
+	}
+
+	/**
+	 * The number of rows (i.e. agents) in the store.
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Copy the current value of every column into its previous value.
+	 * Called at the start of every step.
+	 */
+	public void snapshot() {
+		for (Column c: columns) c.snapshot();
+	}
+
+	public DoubleColumn doubleColumn(double initial) {
+		return add(new DoubleColumn(size, initial));
+	}
+
+	public LongColumn longColumn(long initial) {
+		return add(new LongColumn(size, initial));
+	}
+
+	public IntColumn intColumn(int initial) {
+		return add(new IntColumn(size, initial));
+	}
+
+	public <E extends Enum<E>> EnumColumn<E> enumColumn(Class<E> type, E initial) {
+		return add(new EnumColumn<E>(size, type, initial));
+	}
+
+	private <X extends Column> X add(X column) {
+		columns.add(column);
+		return column;
+	}
+
+	/**
+	 * A RAgentStatus that is a view on a row of a column store. The agent does
+	 * not copy these itself at the start of a step, and instead uses the
+	 * view on the previous values given by `previous()` as its old status.
+	 */
+	public static interface View<T extends RAgentStatus> {
+		public T previous();
+	}
+
+	public static abstract class Column implements Serializable {
+		abstract void snapshot();
+		public abstract int size();
+	}
+
+	public static class DoubleColumn extends Column {
+		double[] current;
+		double[] old;
+
+		DoubleColumn(int size, double initial) {
+			current = new double[size];
+			old = new double[size];
+			Arrays.fill(current, initial);
+			Arrays.fill(old, initial);
+		}
+
+		public double get(int id) {return current[id];}
+		public double getOld(int id) {return old[id];}
+		public void set(int id, double value) {current[id] = value;}
+		void snapshot() {System.arraycopy(current, 0, old, 0, current.length);}
+		public int size() {return current.length;}
+
+		public double sum() {
+			double out = 0;
+			for (int i=0; i<current.length; i++) out += current[i];
+			return out;
+		}
+	}
+
+	public static class LongColumn extends Column {
+		long[] current;
+		long[] old;
+
+		LongColumn(int size, long initial) {
+			current = new long[size];
+			old = new long[size];
+			Arrays.fill(current, initial);
+			Arrays.fill(old, initial);
+		}
+
+		public long get(int id) {return current[id];}
+		public long getOld(int id) {return old[id];}
+		public void set(int id, long value) {current[id] = value;}
+		void snapshot() {System.arraycopy(current, 0, old, 0, current.length);}
+		public int size() {return current.length;}
+	}
+
+	public static class IntColumn extends Column {
+		int[] current;
+		int[] old;
+
+		IntColumn(int size, int initial) {
+			current = new int[size];
+			old = new int[size];
+			Arrays.fill(current, initial);
+			Arrays.fill(old, initial);
+		}
+
+		public int get(int id) {return current[id];}
+		public int getOld(int id) {return old[id];}
+		public void set(int id, int value) {current[id] = value;}
+		void snapshot() {System.arraycopy(current, 0, old, 0, current.length);}
+		public int size() {return current.length;}
+
+		public int count(int value) {
+			int out = 0;
+			for (int i=0; i<current.length; i++) if (current[i] == value) out++;
+			return out;
+		}
+	}
+
+	/**
+	 * An enum valued column, held as the ordinal of the value.
+	 */
+	public static class EnumColumn<E extends Enum<E>> extends IntColumn {
+		E[] values;
+
+		EnumColumn(int size, Class<E> type, E initial) {
+			super(size, initial.ordinal());
+			values = type.getEnumConstants();
+		}
+
+		public E getValue(int id) {return values[current[id]];}
+		public E getOldValue(int id) {return values[old[id]];}
+		public void setValue(int id, E value) {current[id] = value.ordinal();}
+
+		public int count(E value) {
+			return count(value.ordinal());
+		}
+	}
+}
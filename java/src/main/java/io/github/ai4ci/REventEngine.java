@@ -0,0 +1,106 @@
+package io.github.ai4ci;
+
+import java.io.Serializable;
+import java.util.Comparator;
+import java.util.PriorityQueue;
+
+/**
+ * A continuous time event queue that runs inside the normal step based
+ * schedule. Events are given a time in units of steps, and on each step all
+ * the events up to the end of that step are processed in time order. Events
+ * may schedule further events, and any that fall within the current step are
+ * also processed before the step finishes.
+ *
+ * This is an alternative to stepping every agent every step for models where
+ * agents only change state at a few points in time, which can be sampled in
+ * advance (e.g. transmission and recovery times on a fixed network). Runtime
+ * then depends on the number of events rather than agents times steps, while the
+ * simulation keeps the same lifecycle and named observers, which are updated
+ * at the end of each step as usual.
+ *
+ * @param <S> the simulation type
+ */
+public class REventEngine<S extends RSimulation<S,?,?,?>> implements RSteppable<S> {
+
+	private int priority;
+	private PriorityQueue<Event<S>> queue = new PriorityQueue<>(new EventOrder());
+	private long sequence = 0;
+	private double time = 0;
+	private long processed = 0;
+
+	public REventEngine(int priority) {
+		this.priority = priority;
+	}
+
+	@Override
+	public int getPriority() {return priority;}
+
+	/**
+	 * Schedule an event at a given time. Events at the same time are
+	 * processed in the order they were scheduled.
+	 */
+	public void schedule(double time, Event<S> event) {
+		event.time = time;
+		event.sequence = sequence++;
+		queue.add(event);
+	}
+
+	/**
+	 * The time of the event being processed, or of the last event processed.
+	 */
+	public double getTime() {
+		return time;
+	}
+
+	/**
+	 * The number of events waiting to be processed
+	 */
+	public int size() {
+		return queue.size();
+	}
+
+	/**
+	 * The total number of events processed so far
+	 */
+	public long getProcessed() {
+		return processed;
+	}
+
+	@Override
+	public void doStep(S simulation) {
+		double end = simulation.getSimTime() + 1;
+		while (!queue.isEmpty() && queue.peek().time < end) {
+			Event<S> event = queue.poll();
+			time = event.time;
+			event.fire(simulation);
+			processed += 1;
+		}
+	}
+
+	@Override
+	public boolean remainsActive(S simulation) {
+		return !simulation.isComplete();
+	}
+
+	/**
+	 * Something that happens at a point in time.
+	 */
+	public static abstract class Event<S> implements Serializable {
+
+		double time;
+		long sequence;
+
+		public double getTime() {
+			return time;
+		}
+
+		public abstract void fire(S simulation);
+	}
+
+	private static class EventOrder implements Comparator<Event<?>>, Serializable {
+		public int compare(Event<?> a, Event<?> b) {
+			int tmp = Double.compare(a.time, b.time);
+			return tmp != 0 ? tmp : Long.compare(a.sequence, b.sequence);
+		}
+	}
+}
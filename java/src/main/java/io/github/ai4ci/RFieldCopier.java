@@ -0,0 +1,157 @@
+package io.github.ai4ci;
+
+import java.io.Serializable;
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.commons.lang3.ClassUtils;
+import org.apache.commons.lang3.SerializationUtils;
+
+import io.github.ai4ci.stats.DelayDistribution;
+
+/**
+ * Copies the state of one java bean into another preallocated instance of the
+ * same class, field by field. This is used to snapshot agent status and
+ * simulation parameterisation at the start of every step without the cost
+ * of a serialization round trip, or allocating a new object.
+ *
+ * All non-static, non-transient fields, including those of superclasses,
+ * are copied. Reference fields are copied by value, so nested objects are
+ * shared between the copies, and this is only allowed for primitives and
+ * their boxed types, strings, enums and types registered as immutable with
+ * `registerImmutable()` (e.g. DelayDistribution). Primitive arrays are
+ * copied element-wise into the target's array if it is the same length,
+ * otherwise cloned.
+ *
+ * Classes with final instance fields (e.g. lombok @Value), or fields of any
+ * other type (e.g. collections, object arrays), cannot be copied and
+ * `supports()` returns false for these, in which case the caller should
+ * fall back to a clone.
+ */
+public class RFieldCopier<X> {
+
+	private static ConcurrentMap<Class<?>, RFieldCopier<?>> copiers = new ConcurrentHashMap<>();
+	private static Set<Class<?>> immutable = ConcurrentHashMap.newKeySet();
+	static {
+		immutable.add(String.class);
+		immutable.add(DelayDistribution.class);
+	}
+
+	private Field[] fields;
+	private boolean supported;
+
+	private RFieldCopier(Class<X> type) {
+		List<Field> tmp = new ArrayList<>();
+		boolean ok = true;
+		for (Class<?> c = type; c != null && !c.equals(Object.class); c = c.getSuperclass()) {
+			for (Field f: c.getDeclaredFields()) {
+				int mod = f.getModifiers();
+				if (Modifier.isStatic(mod) || Modifier.isTransient(mod)) continue;
+				if (Modifier.isFinal(mod) || !isCopyable(f.getType())) {ok = false; continue;}
+				try {
+					f.setAccessible(true);
+				} catch (RuntimeException e) {
+					ok = false; continue;
+				}
+				tmp.add(f);
+			}
+		}
+		this.fields = tmp.toArray(new Field[0]);
+		this.supported = ok;
+	}
+
+	private static boolean isCopyable(Class<?> type) {
+		if (type.isArray()) return type.getComponentType().isPrimitive();
+		return ClassUtils.isPrimitiveOrWrapper(type) || type.isEnum() || immutable.contains(type);
+	}
+
+	/**
+	 * Allow fields of this type to be shared between copies. Instances must
+	 * not be changed after they are created.
+	 */
+	public static void registerImmutable(Class<?> type) {
+		if (immutable.add(type)) copiers.clear();
+	}
+
+	/**
+	 * Get the (cached) copier for a specific class.
+	 */
+	@SuppressWarnings("unchecked")
+	public static <X> RFieldCopier<X> of(Class<X> type) {
+		return (RFieldCopier<X>) copiers.computeIfAbsent(type, t -> new RFieldCopier<>(t));
+	}
+
+	/**
+	 * Can instances of this class be copied field by field.
+	 */
+	public boolean supports() {
+		return supported;
+	}
+
+	/**
+	 * Copy all the fields of `from` into `to`. Both must be exactly of the
+	 * type this copier was created for.
+	 * @param from the source
+	 * @param to the preallocated target
+	 * @return the target
+	 */
+	public X copy(X from, X to) {
+		if (!supported) throw new RuntimeException("Cannot copy fields of "+from.getClass().getName());
+		try {
+			for (Field f: fields) {
+				Class<?> type = f.getType();
+				if (type.isPrimitive()) {
+					if (type == double.class) f.setDouble(to, f.getDouble(from));
+					else if (type == long.class) f.setLong(to, f.getLong(from));
+					else if (type == int.class) f.setInt(to, f.getInt(from));
+					else if (type == boolean.class) f.setBoolean(to, f.getBoolean(from));
+					else if (type == float.class) f.setFloat(to, f.getFloat(from));
+					else if (type == short.class) f.setShort(to, f.getShort(from));
+					else if (type == byte.class) f.setByte(to, f.getByte(from));
+					else if (type == char.class) f.setChar(to, f.getChar(from));
+				} else if (type.isArray()) {
+					f.set(to, copyArray(f.get(from), f.get(to)));
+				} else {
+					f.set(to, f.get(from));
+				}
+			}
+			return to;
+		} catch (IllegalAccessException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	private static Object copyArray(Object from, Object to) {
+		if (from == null) return null;
+		int length = Array.getLength(from);
+		if (to == null || to.getClass() != from.getClass() || Array.getLength(to) != length) {
+			to = Array.newInstance(from.getClass().getComponentType(), length);
+		}
+		System.arraycopy(from, 0, to, 0, length);
+		return to;
+	}
+
+	/**
+	 * Snapshot `from` into `to` if possible, otherwise (e.g. the target is
+	 * null, or of a different class) create a new copy by serialization.
+	 * @param <Y> the type of the bean
+	 * @param from the current value
+	 * @param to the previous snapshot which will be overwritten, may be null
+	 * @return the snapshot, which is `to` unless a new copy was needed
+	 */
+	@SuppressWarnings("unchecked")
+	public static <Y extends Serializable> Y snapshot(Y from, Y to) {
+		if (from == null) return null;
+		if (to != null && to != from && to.getClass() == from.getClass()) {
+			RFieldCopier<Y> copier = RFieldCopier.of((Class<Y>) from.getClass());
+			if (copier.supports()) return copier.copy(from, to);
+		}
+		return SerializationUtils.clone(from);
+	}
+}
@@ -202,6 +202,11 @@ public abstract class RGUI<
 	
 	public void start() {
 		super.start();
+		if (!(getSimulation().getSchedule() instanceof RSchedule.Mason)) {
+			// The console only steps the MASON schedule, so that needs to
+			// drive the simulation's own schedule.
+			state.schedule.scheduleRepeating(s -> getSimulation().getSchedule().step(s));
+		}
 		this.withPortrayal(null, getName(), beforeSize, afterSize);
 		// portrayal.setup(null, null);
 		charts.forEach(c -> c.reset());
@@ -0,0 +1,262 @@
+package io.github.ai4ci;
+
+import java.io.Serializable;
+import java.lang.reflect.Array;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.RandomAccess;
+
+/**
+ * A ring buffer of the most recent observations, as a read only list with the
+ * newest first, as expected by RObserver.getObservation(). Adding a value and
+ * getting any element are both constant time, and the buffer is its own list
+ * view so getting the observation does not allocate anything. The view is
+ * live, and changes as values are added. Long, int and
+ * double values are held in primitive arrays, and unboxed accessors are
+ * provided for these.
+ *
+ * A buffer with a maximum size keeps at most that many values, replacing the
+ * oldest. A buffer without one doubles in size when it is full.
+ *
+ * This is not thread safe.
+ */
+public abstract class RHistoryBuffer<X> extends AbstractList<X> implements RandomAccess, Serializable {
+
+	private static final int INITIAL_CAPACITY = 16;
+
+	private Integer maxElements;
+	int capacity;
+	private int head = 0;
+	private int size = 0;
+
+	RHistoryBuffer(Integer maxElements) {
+		if (maxElements != null && maxElements < 1) throw new RuntimeException("A history must hold at least one value");
+		this.maxElements = maxElements;
+		this.capacity = maxElements == null ? INITIAL_CAPACITY : Math.min(maxElements, INITIAL_CAPACITY);
+	}
+
+	/**
+	 * A buffer for a type of observation, which is held as primitives for
+	 * Long, Integer and Double.
+	 * @param maxElements the number of values to keep, or null for all
+	 */
+	@SuppressWarnings("unchecked")
+	public static <X> RHistoryBuffer<X> of(Class<X> type, Integer maxElements) {
+		if (type.equals(Long.class)) return (RHistoryBuffer<X>) new OfLong(maxElements);
+		if (type.equals(Integer.class)) return (RHistoryBuffer<X>) new OfInt(maxElements);
+		if (type.equals(Double.class)) return (RHistoryBuffer<X>) new OfDouble(maxElements);
+		return new OfObject<X>(maxElements);
+	}
+
+	abstract Object array();
+	abstract void array(Object array);
+
+	/**
+	 * Add a value as the newest observation.
+	 */
+	public abstract void push(X value);
+
+	/**
+	 * The array slot for a new value, making room if needed. This may replace
+	 * the array, so must be called before the array is read.
+	 */
+	int next() {
+		if (size == capacity && (maxElements == null || capacity < maxElements)) {
+			resize(maxElements == null ? capacity*2 : (int) Math.min((long) capacity*2, maxElements));
+		}
+		int slot = head;
+		head = head+1 == capacity ? 0 : head+1;
+		if (size < capacity) size += 1;
+		return slot;
+	}
+
+	/**
+	 * The array slot of the ith newest value.
+	 */
+	int slot(int index) {
+		Objects.checkIndex(index, size);
+		int tmp = head-1-index;
+		return tmp < 0 ? tmp+capacity : tmp;
+	}
+
+	private void resize(int newCapacity) {
+		Object old = array();
+		Object tmp = Array.newInstance(old.getClass().getComponentType(), newCapacity);
+		// copy oldest first, so the newest is at size-1
+		int oldest = head-size < 0 ? head-size+capacity : head-size;
+		int first = Math.min(size, capacity-oldest);
+		System.arraycopy(old, oldest, tmp, 0, first);
+		System.arraycopy(old, 0, tmp, first, size-first);
+		array(tmp);
+		capacity = newCapacity;
+		head = size;
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	@Override
+	public void clear() {
+		head = 0;
+		size = 0;
+	}
+
+	public Integer getMaxElements() {
+		return maxElements;
+	}
+
+	/**
+	 * A list of lists, e.g. from RObserver.OfLists, as one flat read only list
+	 * of their elements in order. This is a copy, so it is not changed by
+	 * later additions to the lists.
+	 */
+	public static <X> List<X> flatten(List<? extends List<? extends X>> lists) {
+		int size = 0;
+		for (List<? extends X> l: lists) size += l.size();
+		List<X> out = new ArrayList<>(size);
+		for (List<? extends X> l: lists) out.addAll(l);
+		return Collections.unmodifiableList(out);
+	}
+
+	public static class OfObject<X> extends RHistoryBuffer<X> {
+
+		private Object[] values;
+
+		OfObject(Integer maxElements) {
+			super(maxElements);
+			values = new Object[capacity];
+		}
+
+		Object array() {return values;}
+		void array(Object array) {values = (Object[]) array;}
+
+		@Override
+		public void push(X value) {
+			int slot = next();
+			values[slot] = value;
+		}
+
+		@SuppressWarnings("unchecked")
+		@Override
+		public X get(int index) {
+			return (X) values[slot(index)];
+		}
+
+		@Override
+		public void clear() {
+			super.clear();
+			Arrays.fill(values, null);
+		}
+	}
+
+	public static class OfLong extends RHistoryBuffer<Long> {
+
+		private long[] values;
+
+		OfLong(Integer maxElements) {
+			super(maxElements);
+			values = new long[capacity];
+		}
+
+		Object array() {return values;}
+		void array(Object array) {values = (long[]) array;}
+
+		@Override
+		public void push(Long value) {
+			pushLong(value);
+		}
+
+		public void pushLong(long value) {
+			int slot = next();
+			values[slot] = value;
+		}
+
+		@Override
+		public Long get(int index) {
+			return values[slot(index)];
+		}
+
+		public long getLong(int index) {
+			return values[slot(index)];
+		}
+
+		/**
+		 * The sum of the newest n values.
+		 */
+		public long sum(int n) {
+			long tmp = 0;
+			for (int i = 0; i < Math.min(n, size()); i++) tmp += values[slot(i)];
+			return tmp;
+		}
+	}
+
+	public static class OfInt extends RHistoryBuffer<Integer> {
+
+		private int[] values;
+
+		OfInt(Integer maxElements) {
+			super(maxElements);
+			values = new int[capacity];
+		}
+
+		Object array() {return values;}
+		void array(Object array) {values = (int[]) array;}
+
+		@Override
+		public void push(Integer value) {
+			pushInt(value);
+		}
+
+		public void pushInt(int value) {
+			int slot = next();
+			values[slot] = value;
+		}
+
+		@Override
+		public Integer get(int index) {
+			return values[slot(index)];
+		}
+
+		public int getInt(int index) {
+			return values[slot(index)];
+		}
+	}
+
+	public static class OfDouble extends RHistoryBuffer<Double> {
+
+		private double[] values;
+
+		OfDouble(Integer maxElements) {
+			super(maxElements);
+			values = new double[capacity];
+		}
+
+		Object array() {return values;}
+		void array(Object array) {values = (double[]) array;}
+
+		@Override
+		public void push(Double value) {
+			pushDouble(value);
+		}
+
+		public void pushDouble(double value) {
+			int slot = next();
+			values[slot] = value;
+		}
+
+		@Override
+		public Double get(int index) {
+			return values[slot(index)];
+		}
+
+		public double getDouble(int index) {
+			return values[slot(index)];
+		}
+	}
+}
@@ -4,6 +4,7 @@ import java.io.FileWriter;
 import java.io.IOException;
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -15,6 +16,7 @@ import org.apache.commons.csv.CSVPrinter;
 import org.apache.commons.lang3.SerializationUtils;
 
 import lombok.extern.slf4j.Slf4j;
+import sim.engine.SimState;
 
 @Slf4j
 public class RObservatory<
@@ -23,8 +25,20 @@ public class RObservatory<
 	> implements RSteppable<S> {
 
 	S simulation;
-	Map<String,List<RObserver<?,?>>> observers = new HashMap<>();
-	Map<String,List<RObserver<?,?>>> namedObservers = new HashMap<>();
+	// observers updated by the observatory each step, rather than by their subject
+	List<RObserver<?,?>> observers = new ArrayList<>();
+	// every registered observer by name then subject id, where the subject
+	// id is the agent id or SIMULATION, in the order they were registered
+	Map<String,Map<Integer,List<RObserver<?,?>>>> byName = new HashMap<>();
+	Map<Class<?>,List<RObserver<?,?>>> byType = new HashMap<>();
+	Map<Class<?>,List<RObserver<?,?>>> byObserverClass = new HashMap<>();
+	
+	static final int SIMULATION = -1;
+	
+	// subject urns for the current simulation urn, which changes when the
+	// simulation is parameterised and bootstrapped
+	transient String urnBase;
+	transient Map<Integer,String> urns;
 	
 	public RObservatory(S simulation) {
 		this.simulation = simulation;
@@ -40,11 +54,19 @@ public class RObservatory<
 	
 	public int getPriority() {return 10000;}
 	
+	/**
+	 * The observatory is added to the schedule to be stepped after every
+	 * step, so it must not also reschedule itself as an RSteppable would.
+	 */
+	@SuppressWarnings("unchecked")
+	@Override
+	public void step(SimState state) {
+		doStep((S) state);
+	}
+	
 	@Override
 	public void doStep(S simulation) {
-		observers.forEach(
-			(u,o2) -> o2.forEach(o3 -> o3.update())
-		);
+		for (int i=0; i<observers.size(); i++) observers.get(i).update();
 	}
 	
 	/**
@@ -56,11 +78,9 @@ public class RObservatory<
 	 */
 	@SuppressWarnings("unchecked")
 	public <O extends RObserver<S,X>,X> Stream<X> observationsByObserver(Class<O> observerType) {
-		return Stream.concat(
-				observers.values().stream().flatMap(o -> o.stream()),
-				namedObservers.values().stream().flatMap(o -> o.stream())
-			)
-			.filter(o -> observerType.isAssignableFrom(o.getClass()))
+		return byObserverClass.entrySet().stream()
+			.filter(e -> observerType.isAssignableFrom(e.getKey()))
+			.flatMap(e -> e.getValue().stream())
 			.map(o -> (O) o)
 			.flatMap(o -> o.getObservation().stream());
 	}
@@ -71,37 +91,28 @@ public class RObservatory<
 	
 	@SuppressWarnings("unchecked")
 	public <X> Stream<X> observationsByNameAndType(String name, Class<X> type) {
-		return Stream.concat(
-				observers.values().stream().flatMap(o -> o.stream()),
-				namedObservers.values().stream().flatMap(o -> o.stream())
-			)
-			.filter(o -> o.getObservationType().equals(type) && o.getName().equals(name))
+		return byName.getOrDefault(name, Collections.emptyMap()).values().stream()
+			.flatMap(l -> l.stream())
+			.filter(o -> o.getObservationType().equals(type))
 			.map(o -> (RObserver<S,X>) o)
 			.flatMap(o -> o.getObservation().stream());
 	}
 	
-	@SuppressWarnings("unchecked")
+	/**
+	 * The observations with a name, keyed by the urn of the observed
+	 * simulation or agent. If a subject has more than one observer with the
+	 * name the last one registered is used.
+	 */
 	public Map<String,List<?>> observationsByName(String name) {
-		Map<String,List<?>> observationsById = new HashMap<>();
-		Stream.concat(
-				observers.values().stream().flatMap(o -> o.stream()),
-				namedObservers.values().stream().flatMap(o -> o.stream())
-			)
-			.filter(o -> o.getName().equals(name))
-			.map(o -> (RObserver<S,?>) o)
-			.forEach(o -> observationsById.put(
-					o.getSubject().getUrn(),
-					o.getObservation()));
+		Map<Integer,List<RObserver<?,?>>> named = byName.getOrDefault(name, Collections.emptyMap());
+		Map<String,List<?>> observationsById = new HashMap<>(named.size()*4/3+1);
+		named.forEach((id,l) -> observationsById.put(urn(id), l.get(l.size()-1).getObservation()));
 		return observationsById;
 	}
 	
 	@SuppressWarnings("unchecked")
 	public <X> Stream<X> observationsByType(Class<X> type) {
-		return Stream.concat(
-				observers.values().stream().flatMap(o -> o.stream()),
-				namedObservers.values().stream().flatMap(o -> o.stream())
-			)
-			.filter(o -> o.getObservationType().equals(type))
+		return byType.getOrDefault(type, Collections.emptyList()).stream()
 			.map(o -> (RObserver<S,X>) o)
 			.flatMap(o -> o.getObservation().stream());
 	}
@@ -122,28 +133,62 @@ public class RObservatory<
 		return out;
 	}
 	
+	/**
+	 * The urn of a subject, which is only built once per subject for each
+	 * simulation urn.
+	 */
+	String urn(int id) {
+		String base = simulation.getUrn();
+		if (!base.equals(urnBase)) {
+			urnBase = base;
+			urns = new HashMap<>();
+		}
+		return urns.computeIfAbsent(id, i -> i == SIMULATION ? urnBase : RAgent.urn(urnBase, i));
+	}
+	
+	private static int subjectId(RObserver<?,?> observer) {
+		RObservable subject = observer.getSubject();
+		if (subject == null) throw new RuntimeException("Observer "+observer.getName()+" has no subject");
+		return subject instanceof RAgent ? ((RAgent<?,?,?,?>) subject).getId() : SIMULATION;
+	}
+	
+	/**
+	 * Index an observer by name, type and subject id. An observer that is
+	 * already registered is ignored. One with the same name and subject as
+	 * another is kept alongside it.
+	 */
+	private void index(RObserver<?,?> observer, boolean updated) {
+		List<RObserver<?,?>> named = byName
+				.computeIfAbsent(observer.getName(), k -> new HashMap<>())
+				.computeIfAbsent(subjectId(observer), k -> new ArrayList<>(1));
+		for (RObserver<?,?> o: named) if (o == observer) return;
+		named.add(observer);
+		byType.computeIfAbsent(observer.getObservationType(), k -> new ArrayList<>()).add(observer);
+		byObserverClass.computeIfAbsent(observer.getClass(), k -> new ArrayList<>()).add(observer);
+		if (updated) observers.add(observer);
+	}
+	
 	public void registerNamedObserver(RObserver<?,?> observer) {
-		if (!this.namedObservers.containsKey(observer.getSubject().getUrn())) 
-				this.namedObservers.put(observer.getSubject().getUrn(), new ArrayList<>());
-		this.namedObservers.get(observer.getSubject().getUrn()).add(observer);
+		index(observer, false);
 	}
 	
 	public void observeSimulation(RSimulationObserver<S,?> observer) {
 		RSimulationObserver<S,?> o = // RSimulationBuilder.kryo.copy(observer); 
 				(RSimulationObserver<S, ?>) SerializationUtils.clone(observer);
 		o.setSubject(simulation);
-		if (!this.observers.containsKey(observer.getSubject().getUrn())) 
-				this.observers.put(observer.getSubject().getUrn(), new ArrayList<>());
-		this.observers.get(observer.getSubject().getUrn()).add(o);
+		index(o, true);
 	}
 	
 	public <A2 extends RAgent<A2,?,?,?>> void observeAgent(A2 agent, RAgentObserver<A2,?> observer) {
 		observer.setSubject(agent);
-		if (!this.observers.containsKey(agent.getUrn())) 
-			this.observers.put(agent.getUrn(), new ArrayList<>());
-		this.observers.get(agent.getUrn()).add(observer);
+		index(observer, true);
 	}
 	
+	/**
+	 * Observe every agent of the observer's agent type with a copy of the 
+	 * observer. For large populations RPopulationObserver records a value
+	 * for all the agents without an observer for each.
+	 */
 	@SuppressWarnings("unchecked")
 	public <A2 extends RAgent<A2,?,?,?>> void observeAgents(RAgentObserver<?,?> observer) {
 		simulation
@@ -154,9 +199,7 @@ public class RObservatory<
 						// RSimulationBuilder.kryo.copy(observer);
 						SerializationUtils.clone(observer);
 				observer2.setSubject((A2) a);
-				if (!this.observers.containsKey(a.getUrn())) 
-					this.observers.put(a.getUrn(), new ArrayList<>());
-				this.observers.get(a.getUrn()).add(observer);
+				index(observer2, true);
 			});
 	}
 	
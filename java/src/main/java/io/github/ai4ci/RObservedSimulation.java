@@ -93,8 +93,7 @@ public class RObservedSimulation<
 		simulation.streamAgents().forEach(a -> {
 			a.getObservers().forEach(o -> observatory.registerNamedObserver(o));
 		});
-		// Add the observatory to the simulation schedule.
-		simulation.getSchedule().scheduleOnce(observatory, observatory.getPriority());
+		// The observatory is added to the schedule by initialiseScheduler().
 	}
 
 	public void setState(State initialized) {
@@ -52,6 +52,34 @@ public interface RObserver<O extends RObservable, X> extends Serializable {
 		return new RSimulationObserver.History<S, X>(name, type, mapper, maxSize);
 	}
 	
+	/**
+	 * A history of the result of a reducer over all the agents, which is
+	 * found in one pass with every other registered reducer, see RReducer.
+	 */
+	public static <S extends RSimulation<S,?,?,A>, A extends RAgent<A,S,?,?>, X> RSimulationObserver<S,X> 
+	simulationReduced(Enum<?> name, Class<X> type, RReducer<A,X> reducer, Integer maxSize) {
+		return new RSimulationObserver.History<S, X>(name, type, s -> Optional.of(s.getReduced(reducer)), maxSize);
+	}
+	
+	/**
+	 * A streaming estimate of the reproduction number from the incidence 
+	 * over a sliding window of steps, see RRtObserver.
+	 */
+	public static <S extends RSimulation<S,?,?,?>> RSimulationObserver<S,RRtObserver.Estimate> 
+	simulationRt(Enum<?> name, RRtObserver.Incidence<S> incidence, RRtObserver.Profile<S> profile, Integer maxSize) {
+		return new RRtObserver<S>(name, incidence, profile, 7, 1, 5, 0.95, maxSize);
+	}
+	
+	/**
+	 * A history of one value for every agent of a type, or a random cohort
+	 * of them, held in a single matrix rather than an observer per agent, 
+	 * see RPopulationObserver.
+	 */
+	public static <S extends RSimulation<S,?,?,? super A>, A extends RAgent<A,?,?,?>> RPopulationObserver<S,A> 
+	populationHistory(Class<A> agentType, Enum<?> name, RPopulationObserver.Mapper<A> mapper, Integer cohortSize, Integer expectedSteps) {
+		return new RPopulationObserver<S,A>(agentType, name, mapper, cohortSize, expectedSteps);
+	}
+	
 	public static interface OfLists<O extends RObservable, X> extends RObserver<O,X> {
 		public List<List<? extends X>> getObservationList();
 	}
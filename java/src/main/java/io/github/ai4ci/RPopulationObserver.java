@@ -0,0 +1,187 @@
+package io.github.ai4ci;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.file.Path;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.function.ToDoubleFunction;
+import java.util.stream.Collectors;
+
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVPrinter;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * A history of one value for every agent of a type, or a random cohort of
+ * them, as an alternative to RObservatory.observeAgents(), which clones an
+ * observer for every agent. The values of each step are written into one
+ * row of a single agent by time matrix of doubles, which is allocated for
+ * the expected number of steps and grows if this is exceeded. This is
+ * registered with RObservatory.observeSimulation(), e.g.:
+ *
+ * <pre>
+ * observatory.observeSimulation(RObserver.populationHistory(Person.class,
+ *     Observations.VIRAL_LOAD, p -&gt; p.getStatus().getViralLoad(), 1000, 100));
+ * </pre>
+ *
+ * The cohort is chosen at the first update, once the agents exist, from a
+ * random stream seeded by the simulation seed, so does not change the
+ * simulation's own random numbers. The observation is a list view of the
+ * matrix, newest step first and in cohort order within a step, and the
+ * whole history can be written as a long format table with appendCsv().
+ */
+@Slf4j
+public class RPopulationObserver<
+		S extends RSimulation<S,?,?,? super A>,
+		A extends RAgent<A,?,?,?>
+	> extends RSimulationObserver<S,Double> {
+
+	public static interface Mapper<A> extends ToDoubleFunction<A>, Serializable {}
+
+	private static final int INITIAL_STEPS = 64;
+
+	Class<A> agentType;
+	Mapper<A> mapper;
+	Integer cohortSize;
+
+	List<A> cohort;
+	int[] ids;
+	long[] times;
+	double[] values;
+	int steps = 0;
+
+	/**
+	 * @param cohortSize the number of agents to observe, or null for all
+	 * @param expectedSteps the number of steps to allocate space for, or null
+	 */
+	RPopulationObserver(Class<A> agentType, Enum<?> name, Mapper<A> mapper, Integer cohortSize, Integer expectedSteps) {
+		super(name);
+		if (cohortSize != null && cohortSize < 1) throw new RuntimeException("A cohort must have at least one agent");
+		this.agentType = agentType;
+		this.mapper = mapper;
+		this.cohortSize = cohortSize;
+		this.times = new long[expectedSteps == null ? INITIAL_STEPS : Math.max(expectedSteps, 1)];
+	}
+
+	private void selectCohort(S subject) {
+		List<A> all = subject.streamAgents(agentType).collect(Collectors.toList());
+		if (cohortSize == null || cohortSize >= all.size()) {
+			cohort = all;
+		} else {
+			// partial Fisher-Yates shuffle of the agent indexes, kept in id order
+			int[] index = new int[all.size()];
+			for (int i=0; i<index.length; i++) index[i] = i;
+			Random random = new Random(subject.seed());
+			for (int i=0; i<cohortSize; i++) {
+				int j = i+random.nextInt(index.length-i);
+				int tmp = index[i]; index[i] = index[j]; index[j] = tmp;
+			}
+			int[] chosen = Arrays.copyOf(index, cohortSize);
+			Arrays.sort(chosen);
+			cohort = Arrays.stream(chosen).mapToObj(all::get).collect(Collectors.toList());
+		}
+		ids = cohort.stream().mapToInt(a -> a.getId()).toArray();
+		values = new double[times.length*cohort.size()];
+		log.debug("Observing "+getName()+" for "+cohort.size()+" of "+all.size()+" agents");
+	}
+
+	@Override
+	public synchronized void update(S subject) {
+		if (cohort == null) selectCohort(subject);
+		if (steps == times.length) {
+			times = Arrays.copyOf(times, times.length*2);
+			values = Arrays.copyOf(values, times.length*cohort.size());
+		}
+		times[steps] = subject.getSimTime();
+		int row = steps*cohort.size();
+		for (int i=0; i<cohort.size(); i++) {
+			values[row+i] = mapper.applyAsDouble(cohort.get(i));
+		}
+		steps += 1;
+	}
+
+	/**
+	 * The number of steps observed.
+	 */
+	public synchronized int getSteps() {
+		return steps;
+	}
+
+	/**
+	 * The ids of the observed agents, in cohort order, or an empty array
+	 * before the first update.
+	 */
+	public synchronized int[] getAgentIds() {
+		return ids == null ? new int[0] : ids.clone();
+	}
+
+	/**
+	 * The value for the ith agent of the cohort at the nth step observed,
+	 * counting from the first.
+	 */
+	public synchronized double getValue(int agent, int step) {
+		if (ids == null || agent < 0 || agent >= ids.length || step < 0 || step >= steps)
+			throw new IndexOutOfBoundsException("No value for agent "+agent+" at step "+step);
+		return values[step*ids.length+agent];
+	}
+
+	/**
+	 * The simulation time of the nth step observed, counting from the first.
+	 */
+	public synchronized long getTime(int step) {
+		if (step < 0 || step >= steps) throw new IndexOutOfBoundsException("No step "+step);
+		return times[step];
+	}
+
+	@Override
+	public List<Double> getObservation() {
+		return new AbstractList<Double>() {
+			public Double get(int index) {
+				synchronized (RPopulationObserver.this) {
+					if (index < 0 || index >= size()) throw new IndexOutOfBoundsException(index);
+					int step = steps-1-index/ids.length;
+					return values[step*ids.length+index%ids.length];
+				}
+			}
+			public int size() {
+				synchronized (RPopulationObserver.this) {
+					return ids == null ? 0 : steps*ids.length;
+				}
+			}
+		};
+	}
+
+	@Override
+	public Class<Double> getObservationType() {
+		return Double.class;
+	}
+
+	/**
+	 * Print the history as a long format table with one row per agent and
+	 * step, oldest first, with the columns simulation urn, agent id,
+	 * timestep and value.
+	 */
+	public synchronized void appendCsv(CSVPrinter csvOut) throws IOException {
+		if (ids == null) return;
+		String urn = getSubject().getUrn();
+		for (int step=0; step<steps; step++) {
+			int row = step*ids.length;
+			for (int i=0; i<ids.length; i++) {
+				csvOut.printRecord(urn, ids[i], times[step], values[row+i]);
+			}
+		}
+	}
+
+	public void writeCsv(Path file) throws IOException {
+		log.info("Writing "+getName()+" observations to: "+file.toString());
+		try (CSVPrinter printer = new CSVPrinter(new FileWriter(file.toFile()), CSVFormat.EXCEL)) {
+			printer.printRecord("simulation", "id", "timestep", getName());
+			appendCsv(printer);
+		}
+	}
+}
@@ -0,0 +1,62 @@
+package io.github.ai4ci;
+
+import java.io.Serializable;
+import java.util.function.Supplier;
+import java.util.stream.Collector;
+
+/**
+ * A summary of all the agents in a simulation, e.g. a count, a sum or a
+ * count grouped by state, as a Collector with an accumulate step for each
+ * agent and a combine step. Reducers are registered with the simulation
+ * during configuration (see RSimulation.registerReducer()) and every
+ * registered reducer is evaluated together in a single pass over the agents,
+ * at most once per step, the first time any one of them is needed. Simulation
+ * observers can then use the results, rather than each streaming all the
+ * agents, e.g.:
+ *
+ * <pre>
+ * RReducer&lt;Person,Long&gt; incidence = registerReducer(Observations.INCIDENCE,
+ *     () -&gt; Collectors.filtering(a -&gt; a.infectedToday(), Collectors.counting()));
+ * registerNamedObserver(RObserver.simulationReduced(Observations.INCIDENCE, Long.class, incidence, null));
+ * </pre>
+ *
+ * Grouping by a key is done with Collectors.groupingBy(). The agents are
+ * reduced in fixed blocks, which are combined in order, so the result does
+ * not depend on the number of threads.
+ */
+public class RReducer<A extends RAgent<A,?,?,?>, R> implements Serializable {
+
+	/**
+	 * Supplies the collector for a reduction. This is needed because
+	 * collectors are not serializable, but a lambda of this type is.
+	 */
+	public static interface Reduction<A,R> extends Supplier<Collector<A,?,R>>, Serializable {}
+
+	private String name;
+	private int slot;
+	private Reduction<A,R> reduction;
+
+	RReducer(String name, int slot, Reduction<A,R> reduction) {
+		this.name = name;
+		this.slot = slot;
+		this.reduction = reduction;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	int getSlot() {
+		return slot;
+	}
+
+	@SuppressWarnings("unchecked")
+	Collector<A,Object,Object> collector() {
+		return (Collector<A,Object,Object>) reduction.get();
+	}
+
+	@SuppressWarnings("unchecked")
+	R cast(Object value) {
+		return (R) value;
+	}
+}
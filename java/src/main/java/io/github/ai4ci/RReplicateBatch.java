@@ -0,0 +1,80 @@
+package io.github.ai4ci;
+
+import static sim.engine.SimState.printlnSynchronized;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Runs a batch of replicates of the same parameterised simulation in
+ * lockstep on one thread, i.e. every replicate is stepped once before any is
+ * stepped again. The replicates are expected to come from
+ * RSimulationFactory.bootstrapBatch(), so they share any RShared parts of
+ * the simulation, and each has its own random stream. Stepping them together
+ * means the shared structure is traversed by each replicate in turn while
+ * it is still in cache, and the batch uses the memory of one copy of the
+ * shared structure plus the agents' state for each replicate.
+ *
+ * Replicates that finish early drop out of the batch, and the batch finishes
+ * when they all have.
+ */
+public class RReplicateBatch<
+		S extends RSimulation<S,?,?,A>,
+		A extends RAgent<A,S,?,?>> implements Runnable {
+
+	List<RSimulationRunnable<S,A>> replicates;
+
+	public RReplicateBatch(List<RObservedSimulation<S,A>> obsSims, String directory) {
+		this(obsSims, directory, false);
+	}
+
+	public RReplicateBatch(List<RObservedSimulation<S,A>> obsSims, String directory, boolean saveFinalState) {
+		this.replicates = obsSims.stream()
+				.map(o -> new RSimulationRunnable<S,A>(o, directory, saveFinalState))
+				.collect(Collectors.toList());
+	}
+
+	public RReplicateBatch<S,A> setTarget(long target) {
+		replicates.forEach(r -> r.setTarget(target));
+		return this;
+	}
+
+	/**
+	 * The runnable for each replicate, e.g. for writing their output.
+	 */
+	public List<RSimulationRunnable<S,A>> getReplicates() {
+		return replicates;
+	}
+
+	public String toString() {
+		return replicates.size()+" replicates: "+replicates.stream()
+				.map(r -> r.progress())
+				.collect(Collectors.joining("; "));
+	}
+
+	@Override
+	public void run() {
+		List<RSimulationRunnable<S,A>> active = new ArrayList<>(replicates);
+		active.forEach(r -> r.begin());
+		try {
+			while (!active.isEmpty()) {
+				if (Thread.interrupted()) throw new InterruptedException("Replicate batch interrupted.");
+				for (int i=0; i<active.size(); i++) {
+					RSimulationRunnable<S,A> r = active.get(i);
+					while (r.isPaused()) Thread.sleep(10);
+					if (r.stepOnce()) {
+						r.end();
+						active.remove(i);
+						i--;
+					}
+				}
+			}
+		} catch (InterruptedException e) {
+			active.forEach(r -> {
+				if (!r.quiet) printlnSynchronized(r.getObsSim().toString()+" interrupted at step "+r.step);
+				r.end();
+			});
+		}
+	}
+}
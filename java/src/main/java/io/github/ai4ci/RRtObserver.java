@@ -0,0 +1,175 @@
+package io.github.ai4ci;
+
+import java.io.Serializable;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Function;
+
+import org.apache.commons.statistics.distribution.GammaDistribution;
+
+import io.github.ai4ci.stats.DelayDistribution;
+import lombok.Value;
+
+/**
+ * A streaming estimate of the reproduction number from the incidence, using
+ * the renewal equation method of Cori et al. (2013). Each step the
+ * incidence is read from the simulation and the total infectiousness of the
+ * people infected in previous steps is found from the infectivity profile.
+ * Over a sliding window of steps the posterior of R is a gamma distribution
+ * with shape `a + sum(incidence)` and rate `1/b + sum(infectiousness)`,
+ * where a and b are the shape and scale of a gamma prior.
+ *
+ * The sums over the profile and window are kept in ring buffers, so each
+ * update costs a fixed amount however large the simulation. The incidence
+ * should be cheap to find, e.g. the last value of another named observer,
+ * which is updated first as observers are updated in the order they are
+ * registered.
+ */
+public class RRtObserver<S extends RSimulation<S,?,?,?>> extends RSimulationObserver<S, RRtObserver.Estimate> {
+
+	public static interface Incidence<S extends RSimulation<S,?,?,?>> extends Function<S,Long>,Serializable {}
+	public static interface Profile<S extends RSimulation<S,?,?,?>> extends Function<S,DelayDistribution>,Serializable {}
+
+	/**
+	 * The estimate at one step. The mean and interval are NaN if there
+	 * was no infectiousness in the window.
+	 */
+	@Value
+	public static class Estimate implements Serializable {
+		long time;
+		long incidence;
+		double infectiousness;
+		double mean;
+		double lower;
+		double upper;
+
+		public String toString() {
+			return String.format("%.3f [%.3f - %.3f]", mean, lower, upper);
+		}
+	}
+
+	Incidence<S> incidence;
+	Profile<S> profile;
+	int window;
+	double priorShape;
+	double priorScale;
+	double interval;
+	Integer maxElements;
+
+	private DelayDistribution lastProfile;
+	private double[] weights;
+	// Incidence for the length of the profile, and incidence and
+	// infectiousness for the length of the window.
+	private long[] pastIncidence;
+	private long[] windowIncidence;
+	private double[] windowInfectiousness;
+	private long windowIncidenceSum = 0;
+	private double windowInfectiousnessSum = 0;
+	private long steps = 0;
+	private RHistoryBuffer<Estimate> x;
+
+	/**
+	 * @param name the name of the observer
+	 * @param incidence the number of new infections in the current step
+	 * @param profile the infectivity profile by days since infection
+	 * @param window the number of steps in the sliding window
+	 * @param priorShape the shape of the gamma prior of R
+	 * @param priorScale the scale of the gamma prior of R
+	 * @param interval the width of the credible interval e.g. 0.95
+	 * @param maxElements the number of estimates to keep, or null for all
+	 */
+	public RRtObserver(Enum<?> name, Incidence<S> incidence, Profile<S> profile,
+			int window, double priorShape, double priorScale, double interval, Integer maxElements) {
+		super(name);
+		this.incidence = incidence;
+		this.profile = profile;
+		this.window = window;
+		this.priorShape = priorShape;
+		this.priorScale = priorScale;
+		this.interval = interval;
+		this.maxElements = maxElements;
+		this.x = RHistoryBuffer.of(Estimate.class, maxElements);
+		this.windowIncidence = new long[window];
+		this.windowInfectiousness = new double[window];
+		this.pastIncidence = new long[0];
+	}
+
+	/**
+	 * A weekly window with the default prior of Cori et al. (mean 5, sd 5)
+	 * and 95% credible intervals.
+	 */
+	public RRtObserver(Enum<?> name, Incidence<S> incidence, Profile<S> profile) {
+		this(name, incidence, profile, 7, 1, 5, 0.95, null);
+	}
+
+	private void updateProfile(DelayDistribution tmp) {
+		if (tmp == lastProfile) return;
+		lastProfile = tmp;
+		int size = (int) tmp.size();
+		// day 0 is not in the infectiousness, so the weights are normalised
+		// over the days from 1
+		double total = 0;
+		for (int i=1; i<size; i++) total += tmp.density(i);
+		weights = new double[size];
+		for (int i=1; i<size; i++) weights[i] = total > 0 ? tmp.density(i)/total : 0;
+		// keep the most recent incidence if the profile length changes
+		long[] old = pastIncidence;
+		pastIncidence = new long[size];
+		for (long t = Math.max(0, steps-Math.min(size, old.length)); t < steps; t++) {
+			pastIncidence[(int) (t % size)] = old[(int) (t % old.length)];
+		}
+	}
+
+	@Override
+	public synchronized void update(S subject) {
+		updateProfile(profile.apply(subject));
+		long today = incidence.apply(subject);
+		int size = pastIncidence.length;
+
+		// infectiousness of the people infected on previous days
+		double lambda = 0;
+		for (int s=1; s<size && s<=steps; s++) {
+			lambda += pastIncidence[(int) ((steps-s) % size)] * weights[s];
+		}
+		if (size > 0) pastIncidence[(int) (steps % size)] = today;
+
+		int slot = (int) (steps % window);
+		windowIncidenceSum += today - windowIncidence[slot];
+		windowInfectiousnessSum += lambda - windowInfectiousness[slot];
+		windowIncidence[slot] = today;
+		windowInfectiousness[slot] = lambda;
+		// once per window start the sum again to stop rounding errors building up
+		if (slot == window-1) {
+			windowInfectiousnessSum = 0;
+			for (double d: windowInfectiousness) windowInfectiousnessSum += d;
+		}
+		steps += 1;
+
+		double mean = Double.NaN, lower = Double.NaN, upper = Double.NaN;
+		if (windowInfectiousnessSum > 0) {
+			double shape = priorShape + windowIncidenceSum;
+			double scale = 1/(1/priorScale + windowInfectiousnessSum);
+			GammaDistribution posterior = GammaDistribution.of(shape, scale);
+			mean = shape*scale;
+			lower = posterior.inverseCumulativeProbability((1-interval)/2);
+			upper = posterior.inverseCumulativeProbability(1-(1-interval)/2);
+		}
+		x.push(new Estimate(subject.getSimTime(), today, lambda, mean, lower, upper));
+	}
+
+	@Override
+	public synchronized List<Estimate> getObservation() {
+		return x;
+	}
+
+	@Override
+	public synchronized Optional<Estimate> getLastObservation() {
+		return x.isEmpty() ? Optional.empty() : Optional.of(x.get(0));
+	}
+
+	@Override
+	public Class<Estimate> getObservationType() {
+		return Estimate.class;
+	}
+
+}
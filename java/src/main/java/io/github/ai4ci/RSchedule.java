@@ -0,0 +1,82 @@
+package io.github.ai4ci;
+
+import java.io.Serializable;
+
+import sim.engine.Schedule;
+import sim.engine.SimState;
+import sim.engine.Steppable;
+
+/**
+ * The discrete time schedule used by an RSimulation. Everything in these
+ * simulations happens in whole steps, and within a step in order of
+ * priority (MASON's ordering), with a set of hooks run before and after every
+ * step. This abstracts over the MASON schedule (see `Mason`) so that a
+ * cheaper implementation (see `RArraySchedule`) can be used when the
+ * generality of the MASON schedule is not needed.
+ */
+public interface RSchedule extends Serializable {
+
+	/**
+	 * The number of steps completed so far.
+	 */
+	public long getSteps();
+
+	/**
+	 * Schedule something to run in the next step with the default priority (0)
+	 */
+	public default boolean scheduleOnce(Steppable steppable) {
+		return scheduleOnce(steppable, 0);
+	}
+
+	/**
+	 * Schedule something to run in the next step with a given priority. Lower
+	 * priorities are run first.
+	 */
+	public boolean scheduleOnce(Steppable steppable, int priority);
+
+	/**
+	 * Add a hook that is run at the start of every step.
+	 */
+	public void addBefore(Steppable steppable);
+
+	/**
+	 * Add a hook that is run at the end of every step.
+	 */
+	public void addAfter(Steppable steppable);
+
+	/**
+	 * Run one step.
+	 * @return false if there was nothing scheduled.
+	 */
+	public boolean step(SimState state);
+
+	/**
+	 * Clears everything scheduled, and all hooks and resets the step count.
+	 */
+	public void reset();
+
+	/**
+	 * The RSchedule implementation that delegates to the MASON schedule of a
+	 * SimState. This is needed if the simulation is run by anything that
+	 * drives the MASON schedule directly, such as the MASON GUI console.
+	 */
+	public static class Mason implements RSchedule {
+
+		SimState state;
+
+		public Mason(SimState state) {
+			this.state = state;
+		}
+
+		public Schedule getSchedule() {
+			return state.schedule;
+		}
+
+		public long getSteps() {return state.schedule.getSteps();}
+		public boolean scheduleOnce(Steppable steppable, int priority) {return state.schedule.scheduleOnce(steppable, priority);}
+		public void addBefore(Steppable steppable) {state.schedule.addBefore(steppable);}
+		public void addAfter(Steppable steppable) {state.schedule.addAfter(steppable);}
+		public boolean step(SimState state) {return state.schedule.step(state);}
+		public void reset() {state.schedule.reset();}
+	}
+}
@@ -0,0 +1,104 @@
+package io.github.ai4ci;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Marks part of a simulation that does not change once it has been set up
+ * (e.g. a contact network built during configuration), and so can be shared
+ * between the parameterisations and execution bootstraps cloned from it,
+ * rather than copied into each. This means the memory used by a batch of
+ * replicates is mostly their agents' state, and replicates stepped together
+ * (see RReplicateBatch) traverse the same copy of the shared structure.
+ *
+ * Anything marked this way must not be changed after the simulation it
+ * belongs to is first cloned. Shared objects are still written out in full
+ * when a simulation is saved.
+ */
+public interface RShared extends Serializable {
+
+	/**
+	 * A deep copy by serialisation, like SerializationUtils.clone(), except
+	 * that any RShared objects are the same instances in the copy.
+	 */
+	@SuppressWarnings("unchecked")
+	public static <X extends Serializable> X clone(X object) {
+		List<Object> shared = new ArrayList<>();
+		try {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			try (ObjectOutputStream out = new SharingOutputStream(bytes, shared)) {
+				out.writeObject(object);
+			}
+			try (ObjectInputStream in = new SharingInputStream(
+					new ByteArrayInputStream(bytes.toByteArray()), shared, object.getClass().getClassLoader())) {
+				return (X) in.readObject();
+			}
+		} catch (IOException | ClassNotFoundException e) {
+			throw new RuntimeException("Could not clone "+object.getClass().getName(), e);
+		}
+	}
+
+	/**
+	 * Stands in for a shared object in the serialised form.
+	 */
+	static class Reference implements Serializable {
+		int index;
+		Reference(int index) {this.index = index;}
+	}
+
+	static class SharingOutputStream extends ObjectOutputStream {
+		List<Object> shared;
+		Map<Object,Reference> references = new IdentityHashMap<>();
+
+		SharingOutputStream(ByteArrayOutputStream out, List<Object> shared) throws IOException {
+			super(out);
+			this.shared = shared;
+			enableReplaceObject(true);
+		}
+
+		@Override
+		protected Object replaceObject(Object obj) {
+			if (!(obj instanceof RShared)) return obj;
+			return references.computeIfAbsent(obj, o -> {
+				shared.add(o);
+				return new Reference(shared.size()-1);
+			});
+		}
+	}
+
+	static class SharingInputStream extends ObjectInputStream {
+		List<Object> shared;
+		ClassLoader loader;
+
+		SharingInputStream(ByteArrayInputStream in, List<Object> shared, ClassLoader loader) throws IOException {
+			super(in);
+			this.shared = shared;
+			this.loader = loader;
+			enableResolveObject(true);
+		}
+
+		@Override
+		protected Object resolveObject(Object obj) {
+			if (obj instanceof Reference) return shared.get(((Reference) obj).index);
+			return obj;
+		}
+
+		@Override
+		protected Class<?> resolveClass(ObjectStreamClass desc) throws IOException, ClassNotFoundException {
+			try {
+				return Class.forName(desc.getName(), false, loader);
+			} catch (ClassNotFoundException e) {
+				return super.resolveClass(desc);
+			}
+		}
+	}
+}
@@ -10,19 +10,28 @@ import java.nio.file.Path;
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.TreeMap;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
 import java.util.function.Function;
+import java.util.function.IntConsumer;
+import java.util.function.ToLongFunction;
+import java.util.stream.Collector;
+import java.util.stream.IntStream;
 import java.util.stream.Stream;
 
-import org.apache.commons.lang3.SerializationUtils;
-
 import io.github.ai4ci.stats.MTWrapper;
 import io.github.ai4ci.stats.Sampler;
 import lombok.extern.slf4j.Slf4j;
-import sim.engine.Schedule;
 import sim.engine.SimState;
 import sim.engine.Steppable;
 
@@ -73,9 +82,115 @@ public abstract class RSimulation<
 	 */
 	public void setSeed(long seedBase) {
 		long tmp = RSimulation.seedFrom(seedBase, config, configBootstrapId, params, paramBootstrapId, executionBootstrapId);
+		this.seed = tmp;
+		this.commonSeed = RSimulation.seedFrom(seedBase, config, configBootstrapId, null, paramBootstrapId, executionBootstrapId);
 		super.setSeed(tmp);
 	}
 	
+	/**
+	 * The seed for common random numbers, as set by `setSeed`. This is the 
+	 * same as the simulation seed but without the parameterisation name, so
+	 * it is the same for every parameterisation of a given configuration and
+	 * bootstrap.
+	 */
+	public long getCommonSeed() {
+		return commonSeed;
+	}
+	
+	/**
+	 * Switches on common random numbers. In this mode the random draws 
+	 * that an agent or simulation makes through `commonSampler()` or 
+	 * `commonUniform()`, and during set up, come from streams that depend
+	 * on the configuration, the bootstrap, the agent and the purpose of the 
+	 * draw, but not on the parameterisation. Comparisons between 
+	 * parameterisations of the same bootstrap are then paired, which reduces
+	 * the variance of the difference between them. By default this is off 
+	 * and these draws come from the usual random streams. 
+	 */
+	public void setCommonRandomNumbers(boolean commonRandomNumbers) {
+		this.commonRandomNumbers = commonRandomNumbers;
+	}
+	
+	public boolean isCommonRandomNumbers() {
+		return commonRandomNumbers;
+	}
+	
+	/**
+	 * A random stream for simulation level draws for a given purpose (any 
+	 * number unique within the model) at the current step. If common random
+	 * numbers are off this is the simulation's sampler. 
+	 */
+	public Sampler commonSampler(long purpose) {
+		if (!commonRandomNumbers) return sampler();
+		return Sampler.substream(commonSeed, -1, this.getSchedule().getSteps(), purpose);
+	}
+	
+	/**
+	 * The derived seed for this simulation, as set by `setSeed`. Agents 
+	 * stepped in parallel derive their own random streams from this.
+	 */
+	public long getSeed() {
+		return seed;
+	}
+	
+	/**
+	 * Switches how agents are stepped. By default (0) each agent is scheduled
+	 * individually in the MASON schedule, and draws from the single simulation
+	 * random stream. If this is 1 or more the active agents are stepped
+	 * together by an RAgentStepper, each with its own random stream derived 
+	 * from the simulation seed, agent id and step, and when it is more than 1
+	 * they are stepped concurrently on a pool of this many threads. For any
+	 * value of 1 or more the results of a given seed are the same.
+	 * 
+	 * Agents must only read other agents via their `getOldStatus()` for this
+	 * to be safe. This must be set before the scheduler is initialised.
+	 */
+	public void setStepThreads(int stepThreads) {
+		this.stepThreads = stepThreads;
+	}
+	
+	public int getStepThreads() {
+		return stepThreads;
+	}
+	
+	/**
+	 * A column store holding the status of the agents, if the agent status
+	 * is held in one. This is snapshotted at the start of every step.
+	 */
+	public Optional<RColumnStore> getColumnStore() {
+		return Optional.ofNullable(columnStore);
+	}
+	
+	protected void setColumnStore(RColumnStore columnStore) {
+		this.columnStore = columnStore;
+	}
+	
+	/**
+	 * The pool the agents are stepped on when stepThreads is more than 1,
+	 * which is created on first use and released by shutdownStepPool().
+	 */
+	protected ForkJoinPool getStepPool() {
+		if (stepThreads <= 1) throw new RuntimeException("No step pool for "+stepThreads+" step threads");
+		if (stepPool == null) {
+			synchronized(this) {
+				if (stepPool == null) stepPool = new ForkJoinPool(stepThreads);
+			}
+		}
+		return stepPool;
+	}
+	
+	/**
+	 * Release the threads of the step pool, if there is one, when the 
+	 * simulation has finished. It is recreated if the simulation is stepped
+	 * again.
+	 */
+	public synchronized void shutdownStepPool() {
+		if (stepPool != null) {
+			stepPool.shutdown();
+			stepPool = null;
+		}
+	}
+	
 	private C config;
 	private P params;
 	private P oldParams;
@@ -84,10 +199,22 @@ public abstract class RSimulation<
 	private int configBootstrapId = 0;
 	private int paramBootstrapId = 0;
 	private int executionBootstrapId = 0;
-	private ConcurrentMap<String, RSimulationObserver<S,?>> observers = new ConcurrentHashMap<>();
+	// Named observers are updated in the order they are registered
+	private Map<String, RSimulationObserver<S,?>> observers = Collections.synchronizedMap(new LinkedHashMap<>());
+	private List<RReducer<A,?>> reducers = new ArrayList<>();
 	transient private ConcurrentMap<String, Object> cache = new ConcurrentHashMap<>();
+	transient private ConcurrentMap<String, Memo> memos = new ConcurrentHashMap<>();
 	private Sampler sampler;
 	private boolean complete = false;
+	private long seed = 0L;
+	private long commonSeed = 0L;
+	private boolean commonRandomNumbers = false;
+	private int stepThreads = 0;
+	transient private volatile ForkJoinPool stepPool;
+	// The number of agents reduced together by each task (see getReduced())
+	private static final int REDUCER_BLOCK = 4096;
+	private RSchedule rSchedule = new RArraySchedule();
+	private RColumnStore columnStore;
 
 	public void setParameterisationBootstrapId(int bootstrapId) {
 		this.paramBootstrapId = bootstrapId;
@@ -110,6 +237,36 @@ public abstract class RSimulation<
 		if (this.cache == null) this.cache = new ConcurrentHashMap<>();
 		this.cache.clear();
 	}
+	
+	/**
+	 * A value that is kept from step to step, and is only recalculated when 
+	 * one of the given dependencies changes (see RAgentSchema.key() for 
+	 * reducing values to a long). Unlike `cached()` this is not cleared at 
+	 * the start of each step.
+	 */
+	@SafeVarargs
+	@SuppressWarnings("unchecked")
+	public final <X> Optional<X> memoised(String name, Class<X> type, Function<S,Optional<X>> mapper, ToLongFunction<S>... dependsOn) {
+		if (this.memos == null) this.memos = new ConcurrentHashMap<>();
+		S self = (S) RSimulation.this;
+		long[] keys = new long[dependsOn.length];
+		for (int i=0; i<dependsOn.length; i++) keys[i] = dependsOn[i].applyAsLong(self);
+		Memo tmp = memos.get(name);
+		if (tmp == null || !Arrays.equals(tmp.keys, keys)) {
+			tmp = new Memo(keys, mapper.apply(self));
+			memos.put(name, tmp);
+		}
+		return (Optional<X>) tmp.value;
+	}
+	
+	private static class Memo {
+		final long[] keys;
+		final Object value;
+		Memo(long[] keys, Object value) {
+			this.keys = keys;
+			this.value = value;
+		}
+	}
 	/**
 	 * Gets a urn style id for a specific simulation configuration, parameterisation
 	 * and replication.
@@ -119,25 +276,52 @@ public abstract class RSimulation<
 		return RSimulation.idFrom(getJobDate(), config, configBootstrapId, params, paramBootstrapId, executionBootstrapId, null);
 	}
 	
+	/**
+	 * The urn of the parameterised simulation that this is an execution 
+	 * bootstrap of, i.e. the same for every execution bootstrap.
+	 */
+	public String getParameterisedUrn() {
+		return RSimulation.idFrom(getJobDate(), config, configBootstrapId, params, paramBootstrapId, null, null);
+	}
+	
 	/**
 	 * Gets a urn style id for a specific simulation configuration, parameterisation
 	 * and replicate, plus unique for a specific simulation step..
 	 * @return A string id unique for the simulation step 
 	 */
 	public String getStepId() {
-		return RSimulation.idFrom(getJobDate(), config, configBootstrapId, params, paramBootstrapId, executionBootstrapId, (int) this.schedule.getSteps());
+		return RSimulation.idFrom(getJobDate(), config, configBootstrapId, params, paramBootstrapId, executionBootstrapId, (int) this.getSchedule().getSteps());
 	}
 	
 	
 	
 	/**
-	 * Utility method to return a stats distribution random number sampler.
-	 * @return
+	 * The simulation's random stream. This is not thread safe and should 
+	 * only be used by the simulation itself and by agents stepped 
+	 * individually. Agents stepped in parallel, or set up by `setupAgents()`,
+	 * have their own streams. 
 	 */
 	public Sampler sampler() {
 		return sampler;
 	}
 	
+	/**
+	 * Run a setup stage (e.g. 3 for `setupStage3SetAgentBaseline()`) for 
+	 * every agent. Each agent has its own random stream for the stage, so the 
+	 * result is the same whether this is run in sequence or in parallel, 
+	 * which it is on the step pool if stepThreads is more than 1. Setup of 
+	 * one agent must not depend on another for this to be safe.
+	 */
+	public void setupAgents(int stage, Consumer<A> setup) {
+		if (stepThreads > 1) {
+			getStepPool().submit(() -> 
+				streamAgents().parallel().forEach(a -> a.setupWithSubstream(stage, () -> setup.accept(a)))
+			).join();
+		} else {
+			streamAgents().forEach(a -> a.setupWithSubstream(stage, () -> setup.accept(a)));
+		}
+	}
+	
 	/**
 	 * The role of this is to add the agent to the simulation, and generate a
 	 * unique id for the agent in this simulation. This happens in the agent
@@ -212,6 +396,64 @@ public abstract class RSimulation<
 	public Stream<RSimulationObserver<S,?>> getObservers() {
 		return observers.values().stream();
 	}
+
+	/**
+	 * Register a summary of all the agents (see RReducer). This should be
+	 * called during configuration, e.g. in setupStage1BeginConfiguration().
+	 */
+	public <R> RReducer<A,R> registerReducer(Enum<?> name, RReducer.Reduction<A,R> reduction) {
+		RReducer<A,R> tmp = new RReducer<A,R>(name.name(), reducers.size(), reduction);
+		reducers.add(tmp);
+		return tmp;
+	}
+	
+	/**
+	 * The result of a registered reducer for the current step. The first 
+	 * call in each step evaluates all the reducers in one pass over the 
+	 * agents, so this should only be called once the agents have been 
+	 * stepped, e.g. by a named observer.
+	 */
+	public <R> R getReduced(RReducer<A,R> reducer) {
+		Object[] tmp = this.cached("reducers", Object[].class, s -> Optional.of(reduceAgents())).get();
+		return reducer.cast(tmp[reducer.getSlot()]);
+	}
+	
+	private Object[] reduceAgents() {
+		int size = reducers.size();
+		List<Collector<A,Object,Object>> collectors = new ArrayList<>();
+		reducers.forEach(r -> collectors.add(r.collector()));
+		int blocks = (agents.size()+REDUCER_BLOCK-1)/REDUCER_BLOCK;
+		Object[][] partial = new Object[blocks][];
+		IntConsumer reduceBlock = b -> {
+			Object[] acc = new Object[size];
+			List<BiConsumer<Object,A>> accumulators = new ArrayList<>();
+			for (int i=0; i<size; i++) {
+				acc[i] = collectors.get(i).supplier().get();
+				accumulators.add(collectors.get(i).accumulator());
+			}
+			int end = Math.min(agents.size(), (b+1)*REDUCER_BLOCK);
+			for (int j=b*REDUCER_BLOCK; j<end; j++) {
+				A a = agents.get(j);
+				for (int i=0; i<size; i++) accumulators.get(i).accept(acc[i], a);
+			}
+			partial[b] = acc;
+		};
+		if (stepThreads > 1 && blocks > 1) {
+			getStepPool().submit(() -> IntStream.range(0, blocks).parallel().forEach(reduceBlock)).join();
+		} else {
+			IntStream.range(0, blocks).forEach(reduceBlock);
+		}
+		// blocks are combined in order so the result is the same however 
+		// many threads are used
+		Object[] out = new Object[size];
+		for (int i=0; i<size; i++) {
+			Collector<A,Object,Object> c = collectors.get(i);
+			Object acc = blocks == 0 ? c.supplier().get() : partial[0][i];
+			for (int b=1; b<blocks; b++) acc = c.combiner().apply(acc, partial[b][i]);
+			out[i] = c.finisher().apply(acc);
+		}
+		return out;
+	}
 	
 	/**
 	 * Intended to be used in a specific simulation extension methods to allow the 
@@ -283,7 +525,7 @@ public abstract class RSimulation<
 	};
 
 	protected void copyParameterisation() {
-		this.oldParams = SerializationUtils.clone(params);
+		this.oldParams = RFieldCopier.snapshot(params, oldParams);
 	}
 	
 	public Optional<P> getLastParameterisation() {
@@ -321,6 +563,7 @@ public abstract class RSimulation<
 	public void start() {
 		if (this.isComplete()) {
 			super.start();
+			this.getSchedule().reset();
 			initialiseScheduler();
 		}
 	}
@@ -331,7 +574,7 @@ public abstract class RSimulation<
 		// The fact that the things they are observing are not complete does 
 		// not matter at this point as this code will only be run at the end of the first 
 		// step.
-		this.schedule.addAfter(new Steppable() {
+		this.getSchedule().addAfter(new Steppable() {
 			@SuppressWarnings("unchecked")
 			@Override
 			public void step(SimState s) {
@@ -348,7 +591,7 @@ public abstract class RSimulation<
 		// Clears caches at the start of each step
 		// and creates a clone of the parameterisation or status using a 
 		// clone operation (?should be a copy constructor?)
-		this.schedule.addBefore(new Steppable() {
+		this.getSchedule().addBefore(new Steppable() {
 				@SuppressWarnings("unchecked")
 				@Override
 				public void step(SimState s) {
@@ -357,18 +600,42 @@ public abstract class RSimulation<
 					simulation.setComplete(complete);
 					simulation.clearCache();
 					simulation.copyParameterisation();
-					simulation.streamAgents()
-						.filter(a -> a.remainsActive(simulation))
-						.forEach(a -> {
-							a.clearCache();
-							a.copyStatus();
-						});
+					simulation.getColumnStore().ifPresent(c -> c.snapshot());
+					if (simulation.getStepThreads() > 1) {
+						simulation.getStepPool().submit(() ->
+							simulation.streamAgents().parallel()
+								.filter(a -> a.remainsActive(simulation))
+								.forEach(a -> {
+									a.clearCache();
+									a.copyStatus();
+								})
+						).join();
+					} else {
+						simulation.streamAgents()
+							.filter(a -> a.remainsActive(simulation))
+							.forEach(a -> {
+								a.clearCache();
+								a.copyStatus();
+							});
+					}
 				}
 		});
 		
-		this.streamAgents()
-			.filter(a -> a.remainsActive())
-			.forEach(a -> this.getSchedule().scheduleOnce(a));
+		if (stepThreads > 0) {
+			// Agents are grouped by priority and each group stepped as a 
+			// single unit.
+			Map<Integer, RAgentStepper<S,A>> steppers = new TreeMap<>();
+			this.streamAgents()
+				.filter(a -> a.remainsActive())
+				.forEach(a -> steppers
+						.computeIfAbsent(a.getPriority(), p -> new RAgentStepper<S,A>(p))
+						.add(a));
+			steppers.values().forEach(st -> this.getSchedule().scheduleOnce(st, st.getPriority()));
+		} else {
+			this.streamAgents()
+				.filter(a -> a.remainsActive())
+				.forEach(a -> this.getSchedule().scheduleOnce(a));
+		}
 		
 		this.getSchedule().scheduleOnce(new RSteppable.UntilComplete<S>(10000) {
 			@Override
@@ -465,9 +732,21 @@ public abstract class RSimulation<
 
 	// UTILTY FUNCTIONS
 	
-	public Schedule getSchedule() {
-		// N.B. to think about an RSchedule wrapper. Also will tg
-		return this.schedule;
+	/**
+	 * The schedule for this simulation. By default this is an RArraySchedule
+	 * unless `useMasonSchedule()` has been called.
+	 */
+	public RSchedule getSchedule() {
+		return this.rSchedule;
+	}
+	
+	/**
+	 * Fall back to the MASON schedule, e.g. if a model needs to use MASON
+	 * scheduling features directly. This must be called before anything is 
+	 * scheduled, i.e. in the simulation constructor.
+	 */
+	protected void useMasonSchedule() {
+		this.rSchedule = new RSchedule.Mason(this);
 	}
 	
 	public Long getSimTime() {
@@ -489,7 +768,7 @@ public abstract class RSimulation<
 							RSimulation.fullPath(
 								this.getFilePath(
 										directory, 
-										(int) this.schedule.getSteps(),
+										(int) this.getSchedule().getSteps(),
 										"sim.ser"
 									)
 							)));
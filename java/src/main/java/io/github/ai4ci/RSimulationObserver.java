@@ -1,12 +1,10 @@
 package io.github.ai4ci;
 
 import java.io.Serializable;
-import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
 import java.util.function.Function;
-import java.util.stream.Collectors;
 
 public abstract class RSimulationObserver<S extends RSimulation<S,?,?,?>,
 		X> implements RObserver<S,X>, Serializable {
@@ -39,7 +37,7 @@ public abstract class RSimulationObserver<S extends RSimulation<S,?,?,?>,
 	
 	public static class History<S extends RSimulation<S,?,?,?>,X>  extends RSimulationObserver<S,X> {
 
-		List<X> x = new ArrayList<>();
+		RHistoryBuffer<X> x;
 		Mapper<S,X> mapper;
 		Class<X> type;
 		Integer maxElements;
@@ -47,10 +45,7 @@ public abstract class RSimulationObserver<S extends RSimulation<S,?,?,?>,
 		@Override
 		public synchronized void update(S subject) {
 			Optional<X> tmp = mapper.apply(subject);
-			if (tmp.isPresent()) x.add(0, tmp.get());
-			while (maxElements != null && x.size() > maxElements) {
-				x.remove((int) maxElements);
-			}
+			if (tmp.isPresent()) x.push(tmp.get());
 		}
 
 		@Override
@@ -58,6 +53,11 @@ public abstract class RSimulationObserver<S extends RSimulation<S,?,?,?>,
 			return x;
 		}
 
+		@Override
+		public synchronized Optional<X> getLastObservation() {
+			return x.isEmpty() ? Optional.empty() : Optional.of(x.get(0));
+		}
+
 		@Override
 		public Class<X> getObservationType() {
 			return type;
@@ -68,6 +68,7 @@ public abstract class RSimulationObserver<S extends RSimulation<S,?,?,?>,
 			this.type = type;
 			this.mapper = mapper;
 			this.maxElements = maxElements;
+			this.x = RHistoryBuffer.of(type, maxElements);
 		}
 		
 	}
@@ -108,7 +109,8 @@ public abstract class RSimulationObserver<S extends RSimulation<S,?,?,?>,
 
 	public static class ListHistory<S extends RSimulation<S,?,?,?>,X>  extends RSimulationObserver<S,X> implements RObserver.OfLists<S, X> {
 
-		List<List<? extends X>> x = new ArrayList<>();
+		RHistoryBuffer<List<? extends X>> x;
+		transient List<X> flattened;
 		ListMapper<S,X> mapper;
 		Class<X> subtype;
 		Integer maxElements;
@@ -116,15 +118,15 @@ public abstract class RSimulationObserver<S extends RSimulation<S,?,?,?>,
 		@Override
 		public synchronized void update(S subject) {
 			List<? extends X> tmp = mapper.apply(subject);
-			x.add(0, tmp);
-			while (maxElements != null && x.size() > maxElements) {
-				x.remove((int) maxElements);
-			}
+			x.push(tmp);
+			flattened = null;
 		}
 
 		@Override
 		public synchronized List<X> getObservation() {
-			return x.stream().flatMap(y -> y.stream()).collect(Collectors.toList());
+			// a snapshot, made at most once per update
+			if (flattened == null) flattened = RHistoryBuffer.flatten(x);
+			return flattened;
 		}
 
 		public synchronized List<List<? extends X>> getObservationList() {
@@ -141,6 +143,7 @@ public abstract class RSimulationObserver<S extends RSimulation<S,?,?,?>,
 			this.subtype = subtype;
 			this.mapper = mapper;
 			this.maxElements = maxElements;
+			this.x = new RHistoryBuffer.OfObject<>(maxElements);
 		}
 		
 	}
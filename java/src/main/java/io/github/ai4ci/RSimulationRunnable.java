@@ -8,6 +8,7 @@ import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Predicate;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -52,6 +53,8 @@ public class RSimulationRunnable<
 	
 	long step = 0;
 	long target = -1;
+	Predicate<S> abortIf = null;
+	boolean aborted = false;
 	long startedAt;
 	long startStep;
 
@@ -82,6 +85,27 @@ public class RSimulationRunnable<
 		return this;
 	}
 	
+	public RSimulationRunnable<S,A> setQuiet(boolean quiet) {
+		this.quiet = quiet;
+		return this;
+	}
+	
+	/**
+	 * Stop the simulation early if this is true after any step, e.g. when a
+	 * simulation can already be seen to be of no further interest.
+	 */
+	public RSimulationRunnable<S,A> setAbortIf(Predicate<S> abortIf) {
+		this.abortIf = abortIf;
+		return this;
+	}
+	
+	/**
+	 * Whether the simulation was stopped by the abort condition.
+	 */
+	public boolean isAborted() {
+		return aborted;
+	}
+	
 //	@SuppressWarnings("unchecked")
 //	public RSimulationRunnable<S,A> cancelAndRestart() throws FileNotFoundException, ClassNotFoundException, IOException {
 //		return RSimulationBuilder
@@ -92,11 +116,8 @@ public class RSimulationRunnable<
 
 	@Override
 	public void run() {
-		obsSim.state = RObservedSimulation.State.RUNNING;
-		startedAt = System.currentTimeMillis();
-		startStep = obsSim.getSimulation().getSchedule().getSteps();
+		begin();
 		boolean simulationCompleted = false;
-		if (!quiet) printlnSynchronized(obsSim.toString()+" started at step "+startStep);
 		
 		try {
 			
@@ -105,20 +126,7 @@ public class RSimulationRunnable<
 				if (Thread.interrupted()) throw new InterruptedException("Simulation "+obsSim.getSimulation().getUrn()+" interrupted.");
 				while (this.isPaused()) Thread.sleep(10);
 				
-				// step the simulation:
-				obsSim.getSimulation().getSchedule().step(obsSim.getSimulation());
-				simulationCompleted = obsSim.getSimulation().isComplete();
-				step = obsSim.getSimulation().getSchedule().getSteps();
-				
-				
-				
-				if (simulationCompleted) {
-					if (!quiet) printlnSynchronized(obsSim.toString()+" finished at step "+step);
-				} else if (target > 0 && step >= target) {
-					simulationCompleted = true; 
-					if (!quiet) printlnSynchronized(obsSim.toString()+" ran to step "+step);
-					
-				}
+				simulationCompleted = stepOnce();
 				
 			}
 		} catch (InterruptedException e) {
@@ -126,7 +134,41 @@ public class RSimulationRunnable<
 			if (!quiet) printlnSynchronized(obsSim.toString()+" interrupted at step "+step);
 			
 		}
+		end();
+	}
+	
+	void begin() {
+		obsSim.state = RObservedSimulation.State.RUNNING;
+		startedAt = System.currentTimeMillis();
+		startStep = obsSim.getSimulation().getSchedule().getSteps();
+		if (!quiet) printlnSynchronized(obsSim.toString()+" started at step "+startStep);
+	}
+	
+	/**
+	 * Step the simulation once
+	 * @return true if the simulation has finished or reached the target
+	 */
+	boolean stepOnce() {
+		obsSim.getSimulation().getSchedule().step(obsSim.getSimulation());
+		boolean simulationCompleted = obsSim.getSimulation().isComplete();
+		step = obsSim.getSimulation().getSchedule().getSteps();
+		
+		if (simulationCompleted) {
+			if (!quiet) printlnSynchronized(obsSim.toString()+" finished at step "+step);
+		} else if (target > 0 && step >= target) {
+			simulationCompleted = true; 
+			if (!quiet) printlnSynchronized(obsSim.toString()+" ran to step "+step);
+		} else if (abortIf != null && abortIf.test(obsSim.getSimulation())) {
+			simulationCompleted = true;
+			aborted = true;
+			log.debug(obsSim.toString()+" aborted at step "+step);
+		}
+		return simulationCompleted;
+	}
+	
+	void end() {
 		obsSim.state = RObservedSimulation.State.COMPLETE;
+		obsSim.getSimulation().shutdownStepPool();
 		if (this.save) obsSim.save(directory);
 	}
 	
@@ -0,0 +1,109 @@
+package io.github.ai4ci;
+
+import java.io.Serializable;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The number of agents in each state of an enum, kept up to date as agents
+ * change state rather than by counting them. The model calls `transition()`
+ * wherever an agent's state is changed, and the count of any state can then
+ * be read in constant time, e.g. by a state count observer or a completion
+ * check. Each count is a LongAdder, so agents being stepped in parallel can
+ * change state without contending for a lock.
+ *
+ * Transitions that happen at a known time without the agent being stepped,
+ * e.g. recovery a fixed time after infection, can be scheduled with
+ * `transitionAt()` and are applied by `advanceTo()`.
+ */
+public class RStateCounter<E extends Enum<E>> implements Serializable {
+
+	private Class<E> type;
+	private E[] states;
+	private LongAdder[] counts;
+	private ConcurrentSkipListMap<Long, LongAdder[]> scheduled = new ConcurrentSkipListMap<>();
+
+	public RStateCounter(Class<E> type) {
+		this.type = type;
+		this.states = type.getEnumConstants();
+		this.counts = new LongAdder[states.length];
+		for (int i=0; i<states.length; i++) counts[i] = new LongAdder();
+	}
+
+	/**
+	 * Set all the counts to zero and forget any scheduled transitions.
+	 */
+	public void reset() {
+		for (LongAdder c: counts) c.reset();
+		scheduled.clear();
+	}
+
+	/**
+	 * Add a number of agents in a state, e.g. when they are created.
+	 */
+	public void add(E state, long n) {
+		counts[state.ordinal()].add(n);
+	}
+
+	/**
+	 * An agent has changed state. Either state may be null for an agent that
+	 * is being added or removed.
+	 */
+	public void transition(E from, E to) {
+		if (from == to) return;
+		if (from != null) counts[from.ordinal()].decrement();
+		if (to != null) counts[to.ordinal()].increment();
+	}
+
+	/**
+	 * An agent will change state at a later time, when the counter is
+	 * advanced to that time.
+	 */
+	public void transitionAt(long time, E from, E to) {
+		if (from == to) return;
+		LongAdder[] tmp = scheduled.computeIfAbsent(time, t -> {
+			LongAdder[] out = new LongAdder[states.length*states.length];
+			for (int i=0; i<out.length; i++) out[i] = new LongAdder();
+			return out;
+		});
+		tmp[from.ordinal()*states.length+to.ordinal()].increment();
+	}
+
+	/**
+	 * Apply all the scheduled transitions at or before a time.
+	 */
+	public synchronized void advanceTo(long time) {
+		while (!scheduled.isEmpty() && scheduled.firstKey() <= time) {
+			LongAdder[] tmp = scheduled.pollFirstEntry().getValue();
+			for (int i=0; i<tmp.length; i++) {
+				long n = tmp[i].sum();
+				if (n == 0) continue;
+				counts[i / states.length].add(-n);
+				counts[i % states.length].add(n);
+			}
+		}
+	}
+
+	public long count(E state) {
+		return counts[state.ordinal()].sum();
+	}
+
+	public long total() {
+		long tmp = 0;
+		for (LongAdder c: counts) tmp += c.sum();
+		return tmp;
+	}
+
+	public Map<E,Long> counts() {
+		Map<E,Long> out = new EnumMap<>(type);
+		for (E state: states) out.put(state, count(state));
+		return out;
+	}
+
+	@Override
+	public String toString() {
+		return counts().toString();
+	}
+}
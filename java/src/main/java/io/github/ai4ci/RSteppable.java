@@ -11,7 +11,7 @@ public interface RSteppable<S extends RSimulation<S,?,?,?>> extends Steppable {
 	public default void step(SimState state) {
 		this.doStep((S) state);
 		if (this.remainsActive((S) state)) {
-			state.schedule.scheduleOnce(this, getPriority());
+			((S) state).getSchedule().scheduleOnce(this, getPriority());
 		}
 	}
 	
@@ -0,0 +1,317 @@
+package io.github.ai4ci;
+
+import java.util.AbstractCollection;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import org.apache.commons.lang3.tuple.Pair;
+import org.apache.commons.math3.random.SobolSequenceGenerator;
+
+import io.github.ai4ci.stats.SplitMix64;
+import lombok.extern.slf4j.Slf4j;
+
+@Slf4j
+/**
+ * A parameter sweep over the fields of a builder, e.g. of a configuration or
+ * parameterisation. The design points are generated lazily as the sweep is
+ * iterated, so a sweep of millions of points takes no memory up front. A
+ * design is a collection of bootstrap id and value pairs in the same order as
+ * Bootstraps.from(), and can be used directly in a flow, e.g.:
+ *
+ * <pre>
+ * RSweep.of(() -&gt; defaultConfig(), OutbreakConfigBuilder::build)
+ *     .named("sweep", OutbreakConfigBuilder::configurationName)
+ *     .range("R0", OutbreakConfigBuilder::R0, 1.0, 3.0, 5)
+ *     .intRange("connectedness", OutbreakConfigBuilder::connectedness, 10, 50)
+ *     .latinHypercube(2, 100, 42L)
+ * </pre>
+ *
+ * A full factorial design runs every combination of the levels of each
+ * axis. A Latin hypercube or Sobol design picks a fixed number of points that
+ * cover the space more evenly than a grid of the same size.
+ *
+ * @param <B> the builder type
+ * @param <X> the built type
+ */
+public class RSweep<B,X> {
+
+	private static class Axis<B> {
+		String name;
+		int levels;
+		Function<Integer,Object> level;
+		Function<Double,Object> unit;
+		BiConsumer<B,Object> setter;
+	}
+
+	Supplier<B> builder;
+	Function<B,X> build;
+	List<Axis<B>> axes = new ArrayList<>();
+	String prefix;
+	BiConsumer<B,String> naming;
+
+	/**
+	 * @param builder supplies the builder for each design point. This must
+	 * return a new builder on every call, e.g. {@code () -> defaultConfig()}
+	 * rather than {@code () -> defaultConfig}. A shared builder keeps the
+	 * values set for the previous point, and is not safe if a design is
+	 * iterated by more than one thread.
+	 * @param build builds the value from the builder
+	 */
+	public static <B,X> RSweep<B,X> of(Supplier<B> builder, Function<B,X> build) {
+		RSweep<B,X> out = new RSweep<>();
+		out.builder = builder;
+		out.build = build;
+		return out;
+	}
+
+	/**
+	 * Give each design point a unique name, made from a prefix and the values
+	 * of each axis, e.g. "sweep[R0=2.000;connectedness=40]". Without this all
+	 * points share the name of the builder, and their results cannot be told
+	 * apart.
+	 */
+	public RSweep<B,X> named(String prefix, BiConsumer<B,String> naming) {
+		this.prefix = prefix;
+		this.naming = naming;
+		return this;
+	}
+
+	/**
+	 * A discrete axis, taking each of the values in a factorial design.
+	 */
+	@SafeVarargs
+	@SuppressWarnings("unchecked")
+	public final <V> RSweep<B,X> levels(String name, BiConsumer<B,V> setter, V... values) {
+		if (values.length == 0) throw new RuntimeException("An axis needs at least one value: "+name);
+		Axis<B> axis = new Axis<>();
+		axis.name = name;
+		axis.levels = values.length;
+		axis.level = i -> values[i];
+		axis.unit = u -> values[Math.min(values.length-1, (int) (u*values.length))];
+		axis.setter = (b,v) -> setter.accept(b, (V) v);
+		axes.add(axis);
+		return this;
+	}
+
+	/**
+	 * A continuous axis between two bounds. A factorial design uses a number
+	 * of equally spaced levels, including the bounds.
+	 */
+	public RSweep<B,X> range(String name, BiConsumer<B,Double> setter, double lower, double upper, int levels) {
+		if (levels < 1 || upper < lower) throw new RuntimeException("Invalid range for axis: "+name);
+		Axis<B> axis = new Axis<>();
+		axis.name = name;
+		axis.levels = levels;
+		axis.level = i -> levels == 1 ? (lower+upper)/2 : lower + (upper-lower)*i/(levels-1);
+		axis.unit = u -> lower + (upper-lower)*u;
+		axis.setter = (b,v) -> setter.accept(b, (Double) v);
+		axes.add(axis);
+		return this;
+	}
+
+	/**
+	 * An integer axis including both bounds. A factorial design uses every
+	 * value.
+	 */
+	public RSweep<B,X> intRange(String name, BiConsumer<B,Integer> setter, int lower, int upper) {
+		if (upper < lower) throw new RuntimeException("Invalid range for axis: "+name);
+		int levels = upper-lower+1;
+		Axis<B> axis = new Axis<>();
+		axis.name = name;
+		axis.levels = levels;
+		axis.level = i -> lower + i;
+		axis.unit = u -> lower + Math.min(levels-1, (int) (u*levels));
+		axis.setter = (b,v) -> setter.accept(b, (Integer) v);
+		axes.add(axis);
+		return this;
+	}
+
+	/**
+	 * Every combination of the levels of each axis, with the last axis
+	 * varying fastest, repeated for each bootstrap.
+	 */
+	public Design factorial(int boots) {
+		long points = 1;
+		for (Axis<B> axis: axes) points = Math.multiplyExact(points, (long) axis.levels);
+		return new Design(boots, points) {
+			Object[] point(long index, Object state) {
+				Object[] values = new Object[axes.size()];
+				for (int d = axes.size()-1; d >= 0; d--) {
+					Axis<B> axis = axes.get(d);
+					values[d] = axis.level.apply((int) (index % axis.levels));
+					index /= axis.levels;
+				}
+				return values;
+			}
+		};
+	}
+
+	/**
+	 * A Latin hypercube of a number of points, repeated for each bootstrap.
+	 * Each axis is divided into as many equal strata as points, and each
+	 * stratum is used by exactly one point. The strata are shuffled with a
+	 * keyed permutation, rather than a stored one, so any point can be
+	 * found from its index alone.
+	 */
+	public Design latinHypercube(int boots, long points, long seed) {
+		return new Design(boots, points) {
+			Object[] point(long index, Object state) {
+				double[] unit = new double[axes.size()];
+				for (int d = 0; d < unit.length; d++) {
+					long stratum = permute(index, points, SplitMix64.seedFrom(seed, d));
+					double jitter = (SplitMix64.seedFrom(seed, d, index) >>> 11) * 0x1.0p-53;
+					unit[d] = (stratum + jitter)/points;
+				}
+				return fromUnit(unit);
+			}
+		};
+	}
+
+	/**
+	 * The first points of a Sobol sequence, skipping the origin, repeated for
+	 * each bootstrap. This fills the space more evenly than random points,
+	 * and works best when the number of points is a power of 2.
+	 */
+	public Design sobol(int boots, long points) {
+		if (axes.size() > 1000) throw new RuntimeException("A Sobol sequence is limited to 1000 axes");
+		if (points >= Integer.MAX_VALUE) throw new RuntimeException("Too many points for a Sobol sequence");
+		return new Design(boots, points) {
+			Object start() {
+				SobolSequenceGenerator generator = new SobolSequenceGenerator(Math.max(1, axes.size()));
+				generator.skipTo(1);
+				return generator;
+			}
+			Object[] point(long index, Object state) {
+				SobolSequenceGenerator generator = (SobolSequenceGenerator) state;
+				if (generator.getNextIndex() != index+1) generator.skipTo((int) (index+1));
+				return fromUnit(generator.nextVector());
+			}
+		};
+	}
+
+	private Object[] fromUnit(double[] unit) {
+		Object[] values = new Object[axes.size()];
+		for (int d = 0; d < values.length; d++) {
+			values[d] = axes.get(d).unit.apply(unit[d]);
+		}
+		return values;
+	}
+
+	/**
+	 * A pseudo-random permutation of 0..n-1, as a Feistel network over the
+	 * next power of 4, walking the cycle until the result is in range.
+	 */
+	static long permute(long index, long n, long key) {
+		int bits = 64 - Long.numberOfLeadingZeros(Math.max(1, n-1));
+		int half = Math.max(1, (bits+1)/2);
+		long mask = (1L << half) - 1;
+		long x = index;
+		do {
+			long left = x >>> half;
+			long right = x & mask;
+			for (int round = 0; round < 4; round++) {
+				long tmp = right;
+				right = (left ^ SplitMix64.seedFrom(key, round, right)) & mask;
+				left = tmp;
+			}
+			x = (left << half) | right;
+		} while (x >= n);
+		return x;
+	}
+
+	private X build(Object[] values) {
+		B tmp = builder.get();
+		for (int d = 0; d < values.length; d++) {
+			axes.get(d).setter.accept(tmp, values[d]);
+		}
+		if (naming != null) naming.accept(tmp, name(values));
+		return build.apply(tmp);
+	}
+
+	private String name(Object[] values) {
+		StringBuilder out = new StringBuilder(prefix).append("[");
+		for (int d = 0; d < values.length; d++) {
+			if (d > 0) out.append(";");
+			out.append(axes.get(d).name).append("=");
+			if (values[d] instanceof Double) out.append(String.format("%.4g", (Double) values[d]));
+			else out.append(values[d]);
+		}
+		return out.append("]").toString();
+	}
+
+	/**
+	 * The design points of a sweep, as a collection of bootstrap id and value
+	 * pairs. Values are built each time the collection is iterated.
+	 */
+	public abstract class Design extends AbstractCollection<Pair<Integer,X>> {
+
+		int boots;
+		long points;
+
+		Design(int boots, long points) {
+			if (boots < 1 || points < 1) throw new RuntimeException("A sweep needs at least one bootstrap and one point");
+			this.boots = boots;
+			this.points = points;
+		}
+
+		/**
+		 * Any state needed to generate the points in order, created at the
+		 * start of each bootstrap.
+		 */
+		Object start() {
+			return null;
+		}
+
+		abstract Object[] point(long index, Object state);
+
+		/**
+		 * The values of each axis at a design point.
+		 */
+		public List<Object> values(long index) {
+			if (index < 0 || index >= points) throw new IndexOutOfBoundsException();
+			return Arrays.asList(point(index, start()));
+		}
+
+		public long getPoints() {
+			return points;
+		}
+
+		@Override
+		public int size() {
+			return (int) Math.min(Integer.MAX_VALUE, boots*points);
+		}
+
+		@Override
+		public Iterator<Pair<Integer,X>> iterator() {
+			return new Iterator<Pair<Integer,X>>() {
+				int boot = 0;
+				long index = 0;
+				Object state = start();
+
+				public boolean hasNext() {
+					return boot < boots;
+				}
+
+				public Pair<Integer,X> next() {
+					if (!hasNext()) throw new NoSuchElementException();
+					Object[] values = point(index, state);
+					Pair<Integer,X> out = Pair.of(boot, build(values));
+					log.debug("[sweep] point "+index+" bootstrap "+boot);
+					index += 1;
+					if (index >= points) {
+						index = 0;
+						boot += 1;
+						state = start();
+					}
+					return out;
+				}
+			};
+		}
+	}
+}
@@ -151,6 +151,7 @@ public class Person implements Steppable {
 		} else {
 			exposed = outbreak.schedule.getSteps();
 			this.infector = infector;
+			outbreak.infected(this);
 			return true;
 		}
 	}
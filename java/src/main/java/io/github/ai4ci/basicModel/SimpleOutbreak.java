@@ -8,6 +8,7 @@ import java.util.stream.Collectors;
 import org.apache.commons.math3.analysis.solvers.BrentSolver;
 import org.apache.commons.math3.util.MathArrays;
 
+import io.github.ai4ci.RStateCounter;
 import io.github.ai4ci.basicModel.Person.Status;
 import sim.engine.SimState;
 import sim.engine.Steppable;
@@ -18,6 +19,8 @@ public class SimpleOutbreak  extends SimState {
 	
 	private static final long serialVersionUID = 1L;
 	private ArrayList<Person> people = new ArrayList<>();
+	// The number of people in each status, updated as people are infected
+	private RStateCounter<Status> statuses = new RStateCounter<>(Status.class);
 
 	protected ArrayList<Person> getPeople() {return people;}
 	
@@ -129,6 +132,8 @@ public class SimpleOutbreak  extends SimState {
 	public void start() {
 		super.start();
 		this.people = new ArrayList<>();
+		this.statuses.reset();
+		this.statuses.add(Status.SUSCEPTIBLE, population);
 		this.complete = false;
 		this.field.clear();
 		this.schedule.clear();
@@ -277,16 +282,30 @@ public class SimpleOutbreak  extends SimState {
 				.average().orElse(this.sociabilityBaseline);
 	}
 	
+	/**
+	 * Called when a person is infected. They are infectious for the length
+	 * of the serial interval and then recover (see Person.getStatus()).
+	 */
+	void infected(Person person) {
+		statuses.transition(Status.SUSCEPTIBLE, Status.INFECTIOUS);
+		statuses.transitionAt(person.getExposed()+serialInterval.length, Status.INFECTIOUS, Status.RECOVERED);
+	}
+	
+	private long count(Status status) {
+		statuses.advanceTo(this.schedule.getSteps());
+		return statuses.count(status);
+	}
+	
 	public long getSusceptible() {
-		return people.stream().filter(p -> p.getStatus().equals(Status.SUSCEPTIBLE)).count();
+		return count(Status.SUSCEPTIBLE);
 	}
 	
 	public long getRecovered() {
-		return people.stream().filter(p -> p.getStatus().equals(Status.RECOVERED)).count();
+		return count(Status.RECOVERED);
 	}
 	
 	public long getInfectious() {
-		return people.stream().filter(p -> p.getStatus().equals(Status.INFECTIOUS)).count();
+		return count(Status.INFECTIOUS);
 	}
 	
 	public double getR() {
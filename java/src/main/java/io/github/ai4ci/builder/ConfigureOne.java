@@ -129,7 +129,7 @@ public class ConfigureOne<
 		log.debug("Building agents {}", getSimulation().getUrn());
 		getSimulation().setupStage2CreateAgents();
 		log.debug("Setting agent baselive {}", getSimulation().getUrn());
-		getSimulation().streamAgents().forEach(a -> a.setupStage3SetAgentBaseline());
+		getSimulation().setupAgents(3, a -> a.setupStage3SetAgentBaseline());
 		getSimulation().setupStage4FinishConfiguration();
 
 		// TODO: could have a list of named agent environments in the simulation (e.g.
@@ -58,7 +58,7 @@ public class ParameteriseOne<
 	public void run() {
 		log.debug("Starting parameterisation {}", getSimulation().getUrn());
 		this.getSimulation().setupStage5StartParameterisation();
-		this.getSimulation().streamAgents().forEach(a -> a.setupStage6InitialiseAgentStatus());
+		this.getSimulation().setupAgents(6, a -> a.setupStage6InitialiseAgentStatus());
 		// Schedule all the agents.
 		this.getSimulation().setupStage7FinishParameterisation();
 		log.debug("Finished parameterisation {}", getSimulation().getUrn());
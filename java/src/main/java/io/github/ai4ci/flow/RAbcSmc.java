@@ -0,0 +1,418 @@
+package io.github.ai4ci.flow;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+import org.apache.commons.lang3.tuple.Pair;
+
+import io.github.ai4ci.RAgent;
+import io.github.ai4ci.RObservedSimulation;
+import io.github.ai4ci.RSimulation;
+import io.github.ai4ci.RSimulationConfiguration;
+import io.github.ai4ci.RSimulationObserver;
+import io.github.ai4ci.RSimulationParameterisation;
+import io.github.ai4ci.RSimulationRunnable;
+import io.github.ai4ci.stats.Sampler;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+@Slf4j
+/**
+ * Approximate Bayesian computation by sequential Monte Carlo (ABC-SMC, after
+ * Toni et al. 2009 and Beaumont et al. 2009) to fit a configuration and
+ * parameterisation to observed time series.
+ *
+ * Parameter vectors are drawn from a prior, or in later generations from
+ * the weighted particles of the previous generation with a Gaussian
+ * perturbation, and turned into a configuration and parameterisation. These
+ * are built with an RSimulationFactory and run. The distance of a run is the
+ * euclidean distance between its named observations and the target series,
+ * which can only grow as the run goes on, so a run is aborted as soon as its
+ * partial distance exceeds the tolerance of the generation. Most rejected
+ * runs therefore stop after a few steps. The tolerance of each generation
+ * is a quantile of the distances accepted in the one before.
+ *
+ * Configurations are cached, so if the configuration does not depend on the
+ * parameters it is only built once. Every run has its own execution
+ * bootstrap id, and so its own random seed.
+ */
+public class RAbcSmc<
+		S extends RSimulation<S,C,P,A>,
+		C extends RSimulationConfiguration,
+		P extends RSimulationParameterisation,
+		A extends RAgent<A,S,?,?>> {
+
+	/**
+	 * A prior for a parameter vector.
+	 */
+	public static interface Prior {
+		double[] sample(Sampler rng);
+		double density(double[] theta);
+	}
+
+	/**
+	 * Independent uniform priors for each parameter.
+	 */
+	public static Prior uniform(double[] lower, double[] upper) {
+		if (lower.length != upper.length) throw new RuntimeException("Prior bounds must be the same length");
+		return new Prior() {
+			public double[] sample(Sampler rng) {
+				double[] out = new double[lower.length];
+				for (int i=0; i<out.length; i++) out[i] = lower[i] + rng.uniform()*(upper[i]-lower[i]);
+				return out;
+			}
+			public double density(double[] theta) {
+				double out = 1;
+				for (int i=0; i<theta.length; i++) {
+					if (theta[i] < lower[i] || theta[i] > upper[i]) return 0;
+					out /= upper[i]-lower[i];
+				}
+				return out;
+			}
+		};
+	}
+
+	/**
+	 * The accepted particles of one generation.
+	 */
+	@Getter
+	public static class Population {
+		int generation;
+		double tolerance;
+		double[][] particles;
+		double[] weights;
+		double[] distances;
+		long runs;
+		long aborted;
+		long steps;
+
+		/**
+		 * The weighted mean of each parameter.
+		 */
+		public double[] mean() {
+			double[] out = new double[particles[0].length];
+			for (int i=0; i<particles.length; i++) {
+				for (int j=0; j<out.length; j++) out[j] += weights[i]*particles[i][j];
+			}
+			return out;
+		}
+
+		public double acceptanceRate() {
+			return ((double) particles.length)/runs;
+		}
+
+		public String toString() {
+			return String.format("generation %d: tolerance %.4g; %d accepted of %d runs (%d aborted early, %.1f steps per run); mean %s",
+					generation, tolerance, particles.length, runs, aborted, ((double) steps)/runs, Arrays.toString(mean()));
+		}
+	}
+
+	RSimulationFactory<S,C,P,A> factory;
+	Prior prior;
+	Function<double[],C> configuration;
+	Function<double[],P> parameterisation;
+	Map<String,double[]> targets = new LinkedHashMap<>();
+	int particles = 100;
+	double quantile = 0.5;
+	int threads = Runtime.getRuntime().availableProcessors();
+	int maxRuns = 1000000;
+	Sampler rng = Sampler.withSeed(0L);
+
+	private Map<C, RObservedSimulation<S,A>> configured = new LinkedHashMap<>();
+	// only used by the thread making the proposals
+	private int nextBootstrapId = 0;
+
+	/**
+	 * @param factory builds the simulations
+	 * @param prior the prior of the parameters
+	 * @param configuration the configuration for a parameter vector
+	 * @param parameterisation the parameterisation for a parameter vector
+	 */
+	public RAbcSmc(RSimulationFactory<S,C,P,A> factory, Prior prior,
+			Function<double[],C> configuration, Function<double[],P> parameterisation) {
+		this.factory = factory;
+		this.prior = prior;
+		this.configuration = configuration;
+		this.parameterisation = parameterisation;
+	}
+
+	/**
+	 * Fit a named observation of the simulation to a series of values, one
+	 * per timestep from the start of the simulation.
+	 */
+	public RAbcSmc<S,C,P,A> withTarget(Enum<?> name, double... series) {
+		this.targets.put(name.name(), series);
+		return this;
+	}
+
+	public RAbcSmc<S,C,P,A> withParticles(int particles) {
+		this.particles = particles;
+		return this;
+	}
+
+	/**
+	 * The quantile of the accepted distances of one generation to use as
+	 * the tolerance of the next.
+	 */
+	public RAbcSmc<S,C,P,A> withQuantile(double quantile) {
+		this.quantile = quantile;
+		return this;
+	}
+
+	public RAbcSmc<S,C,P,A> withThreads(int threads) {
+		this.threads = threads;
+		return this;
+	}
+
+	/**
+	 * The most simulations to run in any one generation.
+	 */
+	public RAbcSmc<S,C,P,A> withMaxRuns(int maxRuns) {
+		this.maxRuns = maxRuns;
+		return this;
+	}
+
+	public RAbcSmc<S,C,P,A> withSeed(long seed) {
+		this.rng = Sampler.withSeed(seed);
+		return this;
+	}
+
+	private int length() {
+		return targets.values().stream().mapToInt(d -> d.length).max().orElse(0);
+	}
+
+	/**
+	 * The distance of one run from the targets, updated after each step.
+	 */
+	class Distance implements Predicate<S> {
+
+		double tolerance;
+		double sumSq = 0;
+		Map<String,Integer> consumed = new LinkedHashMap<>();
+		Map<String,Double> last = new LinkedHashMap<>();
+
+		Distance(double tolerance) {
+			this.tolerance = tolerance;
+		}
+
+		void update(S simulation) {
+			simulation.getObservers()
+				.filter(o -> targets.containsKey(o.getName()))
+				.forEach(o -> update(o));
+		}
+
+		// observations are newest first
+		private void update(RSimulationObserver<S,?> observer) {
+			double[] target = targets.get(observer.getName());
+			List<?> values = observer.getObservation();
+			int n = values.size();
+			int k = consumed.getOrDefault(observer.getName(), 0);
+			for (; k<n; k++) {
+				Object value = values.get(n-1-k);
+				if (!(value instanceof Number)) throw new RuntimeException("Observation "+observer.getName()+" is not a number");
+				double x = ((Number) value).doubleValue();
+				last.put(observer.getName(), x);
+				if (k < target.length) sumSq += (x-target[k])*(x-target[k]);
+			}
+			consumed.put(observer.getName(), k);
+		}
+
+		/**
+		 * If the simulation finished early the rest of the series are taken
+		 * to be the last value observed.
+		 */
+		double finish(S simulation) {
+			update(simulation);
+			targets.forEach((name,target) -> {
+				double x = last.getOrDefault(name, 0D);
+				for (int k = consumed.getOrDefault(name, 0); k<target.length; k++) {
+					sumSq += (x-target[k])*(x-target[k]);
+				}
+			});
+			return Math.sqrt(sumSq);
+		}
+
+		@Override
+		public boolean test(S simulation) {
+			update(simulation);
+			return Math.sqrt(sumSq) > tolerance;
+		}
+	}
+
+	private RObservedSimulation<S,A> configured(C config) {
+		synchronized(configured) {
+			RObservedSimulation<S,A> tmp = configured.get(config);
+			if (tmp == null) {
+				if (configured.size() >= threads) configured.clear();
+				tmp = factory.configure(
+						RObservedSimulation.<S,A>uninitialised(factory.simulationType).get(),
+						Pair.of(0, config));
+				configured.put(config, tmp);
+			}
+			return tmp;
+		}
+	}
+
+	/**
+	 * Run the model with a parameter vector and execution bootstrap id, and
+	 * return its distance from the targets, or infinity if it was aborted.
+	 */
+	private double run(double[] theta, int bootstrapId, double tolerance, AtomicLong aborted, AtomicLong steps) {
+		RObservedSimulation<S,A> obsSim = configured(configuration.apply(theta));
+		obsSim = factory.parameterise(obsSim, Pair.of(0, parameterisation.apply(theta)));
+		obsSim = factory.bootstrapExecutions(obsSim, bootstrapId);
+		Distance distance = new Distance(tolerance);
+		RSimulationRunnable<S,A> runnable = new RSimulationRunnable<S,A>(obsSim, factory.directory)
+				.setQuiet(true)
+				.setTarget(length())
+				.setAbortIf(distance);
+		runnable.run();
+		steps.addAndGet(obsSim.getSimulation().getSchedule().getSteps());
+		if (runnable.isAborted()) {
+			aborted.incrementAndGet();
+			return Double.POSITIVE_INFINITY;
+		}
+		return distance.finish(obsSim.getSimulation());
+	}
+
+	/**
+	 * Run a number of generations, the first from the prior with no
+	 * tolerance.
+	 * @return the accepted population of each generation
+	 */
+	public List<Population> run(int generations) {
+		if (targets.isEmpty()) throw new RuntimeException("No targets defined");
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		List<Population> out = new ArrayList<>();
+		try {
+			Population previous = null;
+			for (int g = 0; g < generations; g++) {
+				Population tmp = generation(g, previous, executor);
+				log.info("[abc] "+tmp);
+				out.add(tmp);
+				previous = tmp;
+			}
+		} finally {
+			executor.shutdown();
+		}
+		return out;
+	}
+
+	private Population generation(int g, Population previous, ExecutorService executor) {
+		double tolerance = previous == null ? Double.POSITIVE_INFINITY : quantile(previous.distances, quantile);
+		double[] sd = previous == null ? null : kernelSd(previous);
+		List<double[]> accepted = new ArrayList<>();
+		List<Double> distances = new ArrayList<>();
+		AtomicLong aborted = new AtomicLong();
+		AtomicLong steps = new AtomicLong();
+		long runs = 0;
+
+		while (accepted.size() < particles) {
+			if (runs >= maxRuns) throw new RuntimeException("No more than "+accepted.size()+" particles accepted in "+runs+" runs at tolerance "+tolerance);
+			// proposals and their bootstrap ids are assigned on this thread so
+			// they do not depend on timing, and run as a batch
+			int batch = (int) Math.min(Math.max(threads, particles - accepted.size()), maxRuns - runs);
+			List<double[]> proposals = new ArrayList<>();
+			while (proposals.size() < batch) {
+				double[] theta = previous == null ? prior.sample(rng) : perturb(previous, sd);
+				if (prior.density(theta) > 0) proposals.add(theta);
+			}
+			List<Future<Double>> results = new ArrayList<>();
+			for (double[] theta: proposals) {
+				int bootstrapId = nextBootstrapId++;
+				results.add(executor.submit(() -> run(theta, bootstrapId, tolerance, aborted, steps)));
+			}
+			for (int i=0; i<proposals.size(); i++) {
+				double d;
+				try {
+					d = results.get(i).get();
+				} catch (InterruptedException | ExecutionException e) {
+					throw new RuntimeException(e);
+				}
+				runs += 1;
+				if (d <= tolerance && accepted.size() < particles) {
+					accepted.add(proposals.get(i));
+					distances.add(d);
+				}
+			}
+		}
+
+		Population out = new Population();
+		out.generation = g;
+		out.tolerance = tolerance;
+		out.particles = accepted.toArray(new double[0][]);
+		out.distances = distances.stream().mapToDouble(d -> d).toArray();
+		out.weights = weights(out.particles, previous, sd);
+		out.runs = runs;
+		out.aborted = aborted.get();
+		out.steps = steps.get();
+		return out;
+	}
+
+	private static double quantile(double[] values, double q) {
+		double[] tmp = values.clone();
+		Arrays.sort(tmp);
+		return tmp[(int) Math.floor(q*(tmp.length-1))];
+	}
+
+	// The perturbation kernel is a normal in each dimension with twice the
+	// weighted variance of the previous population (Beaumont et al. 2009)
+	private static double[] kernelSd(Population previous) {
+		double[] mean = previous.mean();
+		double[] out = new double[mean.length];
+		for (int i=0; i<previous.particles.length; i++) {
+			for (int j=0; j<out.length; j++) {
+				double d = previous.particles[i][j]-mean[j];
+				out[j] += previous.weights[i]*d*d;
+			}
+		}
+		for (int j=0; j<out.length; j++) out[j] = Math.max(Math.sqrt(2*out[j]), Double.MIN_NORMAL);
+		return out;
+	}
+
+	private double[] perturb(Population previous, double[] sd) {
+		double u = rng.uniform();
+		int i = 0;
+		while (i < previous.weights.length-1 && u > previous.weights[i]) {
+			u -= previous.weights[i];
+			i++;
+		}
+		double[] out = previous.particles[i].clone();
+		for (int j=0; j<out.length; j++) out[j] = rng.normal(out[j], sd[j]);
+		return out;
+	}
+
+	private double[] weights(double[][] particles, Population previous, double[] sd) {
+		double[] out = new double[particles.length];
+		double total = 0;
+		for (int i=0; i<particles.length; i++) {
+			if (previous == null) {
+				out[i] = 1;
+			} else {
+				double kernel = 0;
+				for (int k=0; k<previous.particles.length; k++) {
+					double tmp = previous.weights[k];
+					for (int j=0; j<sd.length; j++) {
+						double z = (particles[i][j]-previous.particles[k][j])/sd[j];
+						tmp *= Math.exp(-z*z/2);
+					}
+					kernel += tmp;
+				}
+				out[i] = prior.density(particles[i])/kernel;
+			}
+			total += out[i];
+		}
+		for (int i=0; i<out.length; i++) out[i] /= total;
+		return out;
+	}
+}
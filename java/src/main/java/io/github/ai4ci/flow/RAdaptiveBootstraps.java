@@ -0,0 +1,236 @@
+package io.github.ai4ci.flow;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.function.ToDoubleFunction;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.apache.commons.statistics.distribution.NormalDistribution;
+
+import io.github.ai4ci.RAgent;
+import io.github.ai4ci.RObservedSimulation;
+import io.github.ai4ci.RSimulation;
+import io.github.ai4ci.stats.Binomial;
+import io.github.ai4ci.stats.Summary;
+import lombok.extern.slf4j.Slf4j;
+
+@Slf4j
+/**
+ * Runs execution bootstraps of each parameterised simulation until some
+ * summary statistics of their results are known precisely enough, rather
+ * than a fixed number. This is used as the last stage of a flow in place of
+ * a fixed list of bootstraps, e.g.:
+ *
+ * <pre>
+ * RAdaptiveBootstraps&lt;Outbreak,Person&gt; adaptive = new RAdaptiveBootstraps&lt;&gt;(5, 100, factory::bootstrapExecutions)
+ *     .withTarget(RAdaptiveBootstraps.mean("peak", s -&gt; ..., 0, 0.05));
+ * flow.attach("bootstrap", adaptive.initial(), adaptive::bootstrap)
+ *     .process(directory, 4)
+ *     .withAdaptiveBootstraps(adaptive)
+ * </pre>
+ *
+ * The flow starts the minimum number of bootstraps of each parameterised
+ * simulation. As each one finishes the consumer adds its results, and if any
+ * target is not yet met, and the maximum has not been reached, another
+ * bootstrap is started. The parameterised simulation is kept until it has
+ * finished.
+ */
+public class RAdaptiveBootstraps<
+		S extends RSimulation<S,?,?,A>,
+		A extends RAgent<A,S,?,?>> {
+
+	/**
+	 * A statistic of finished simulations, held as some state X which is 
+	 * updated as each simulation finishes, and when it is known precisely
+	 * enough.
+	 */
+	public static interface Target<S extends RSimulation<S,?,?,?>, X> {
+		X add(X state, S simulation);
+		boolean isMet(X state);
+		String describe(X state);
+	}
+
+	/**
+	 * A target for the mean of a statistic over bootstraps. This is met when
+	 * the half width of the 95% confidence interval of the mean is less than
+	 * an absolute amount or a fraction of the mean.
+	 */
+	public static <S extends RSimulation<S,?,?,?>> Target<S,Summary> mean(String name,
+			ToDoubleFunction<S> statistic, double absolute, double relative) {
+		double z = NormalDistribution.of(0, 1).inverseCumulativeProbability(0.975);
+		return new Target<S,Summary>() {
+			public Summary add(Summary state, S simulation) {
+				Summary tmp = state == null ? new Summary() : state;
+				tmp.add(statistic.applyAsDouble(simulation));
+				return tmp;
+			}
+			public boolean isMet(Summary state) {
+				if (state == null || state.getCount() < 2) return false;
+				double halfWidth = z*state.getSd()/Math.sqrt(state.getCount());
+				return halfWidth <= absolute || halfWidth <= relative*Math.abs(state.getMean());
+			}
+			public String describe(Summary state) {
+				if (state == null) return name+" none";
+				return String.format("%s %.4g (sd %.4g, n=%d)", name, state.getMean(), state.getSd(), state.getCount());
+			}
+		};
+	}
+
+	/**
+	 * A target for a proportion pooled over bootstraps, e.g. an attack rate
+	 * as the number infected out of the population. This is met when the 95%
+	 * Wilson interval of the pooled proportion is narrower than a width.
+	 */
+	public static <S extends RSimulation<S,?,?,?>> Target<S,Binomial> proportion(String name,
+			Function<S,Binomial> statistic, double width) {
+		return new Target<S,Binomial>() {
+			public Binomial add(Binomial state, S simulation) {
+				Binomial tmp = state == null ? Binomial.of(0, 0) : state;
+				tmp.update(statistic.apply(simulation));
+				return tmp;
+			}
+			public boolean isMet(Binomial state) {
+				if (state == null || state.getRight() == 0) return false;
+				Binomial.Confidence ci = state.wilson(0.05);
+				return ci.upper() - ci.lower() <= width;
+			}
+			public String describe(Binomial state) {
+				return name+" "+state;
+			}
+		};
+	}
+
+	private class Group {
+		RObservedSimulation<S,A> prototype;
+		int started = 0;
+		int finished = 0;
+		Object[] state = new Object[targets.size()];
+		boolean done = false;
+	}
+
+	int minimum;
+	int maximum;
+	BiFunction<RObservedSimulation<S,A>, Integer, RObservedSimulation<S,A>> function;
+	List<Target<S,?>> targets = new ArrayList<>();
+	Map<String, Group> groups = new ConcurrentHashMap<>();
+
+	/**
+	 * @param minimum the number of bootstraps to start with
+	 * @param maximum the most bootstraps to run
+	 * @param function creates an execution bootstrap from a parameterised
+	 * simulation, e.g. RSimulationFactory.bootstrapExecutions()
+	 */
+	public RAdaptiveBootstraps(int minimum, int maximum,
+			BiFunction<RObservedSimulation<S,A>, Integer, RObservedSimulation<S,A>> function) {
+		if (minimum < 1 || maximum < minimum) throw new RuntimeException("Bootstraps must be at least 1 and the maximum no less than the minimum");
+		this.minimum = minimum;
+		this.maximum = maximum;
+		this.function = function;
+	}
+
+	/**
+	 * Add a target which must be met, along with any others, before a 
+	 * parameterised simulation stops being bootstrapped.
+	 */
+	public RAdaptiveBootstraps<S,A> withTarget(Target<S,?> target) {
+		this.targets.add(target);
+		return this;
+	}
+	
+	public RAdaptiveBootstraps<S,A> withTargets(List<Target<S,?>> targets) {
+		this.targets.addAll(targets);
+		return this;
+	}
+
+	/**
+	 * The bootstrap ids to start for every parameterised simulation.
+	 */
+	public Collection<Integer> initial() {
+		return IntStream.range(0, minimum).boxed().collect(Collectors.toList());
+	}
+
+	/**
+	 * The flow function for the initial bootstraps. This keeps the
+	 * parameterised simulation for any more that are needed.
+	 */
+	public RObservedSimulation<S,A> bootstrap(RObservedSimulation<S,A> prototype, Integer bootstrapId) {
+		Group group = groups.computeIfAbsent(prototype.getSimulation().getParameterisedUrn(), k -> new Group());
+		synchronized(group) {
+			group.prototype = prototype;
+			group.started += 1;
+		}
+		return function.apply(prototype, bootstrapId);
+	}
+
+	/**
+	 * Add the results of a finished simulation, and if more are needed
+	 * return the next bootstrap of the same parameterisation. This is called
+	 * by the consumer, and the bootstrap is only created when the supplier
+	 * is called, so the consumer can hold it until there is room to run it.
+	 */
+	public Optional<Supplier<RObservedSimulation<S,A>>> completed(S simulation) {
+		String key = simulation.getParameterisedUrn();
+		Group group = groups.get(key);
+		if (group == null) return Optional.empty();
+		RObservedSimulation<S,A> prototype;
+		int next;
+		synchronized(group) {
+			group.finished += 1;
+			for (int i=0; i<targets.size(); i++) {
+				group.state[i] = add(targets.get(i), group.state[i], simulation);
+			}
+			boolean met = IntStream.range(0, targets.size()).allMatch(i -> isMet(targets.get(i), group.state[i]));
+			if (group.done || group.started < minimum) return Optional.empty();
+			if (met || group.started >= maximum) {
+				if (group.finished >= group.started) {
+					group.done = true;
+					group.prototype = null;
+					log.info("[adaptive] "+key+" finished after "+group.finished+" bootstraps; "+describe(group));
+				}
+				return Optional.empty();
+			}
+			prototype = group.prototype;
+			next = group.started;
+			group.started += 1;
+			log.debug("[adaptive] "+key+" starting bootstrap "+next+"; "+describe(group));
+		}
+		return Optional.of(() -> function.apply(prototype, next));
+	}
+
+	@SuppressWarnings("unchecked")
+	private static <S extends RSimulation<S,?,?,?>,X> Object add(Target<S,X> target, Object state, S simulation) {
+		return target.add((X) state, simulation);
+	}
+
+	@SuppressWarnings("unchecked")
+	private static <S extends RSimulation<S,?,?,?>,X> boolean isMet(Target<S,X> target, Object state) {
+		return target.isMet((X) state);
+	}
+
+	@SuppressWarnings("unchecked")
+	private static <S extends RSimulation<S,?,?,?>,X> String describe(Target<S,X> target, Object state) {
+		return target.describe((X) state);
+	}
+
+	private String describe(Group group) {
+		return IntStream.range(0, targets.size())
+				.mapToObj(i -> describe(targets.get(i), group.state[i]))
+				.collect(Collectors.joining("; "));
+	}
+
+	/**
+	 * The number of bootstraps started so far for each parameterised
+	 * simulation.
+	 */
+	public Map<String, Integer> getStarted() {
+		return groups.entrySet().stream().collect(Collectors.toMap(e -> e.getKey(), e -> e.getValue().started));
+	}
+}
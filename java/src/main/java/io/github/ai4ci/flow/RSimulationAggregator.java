@@ -0,0 +1,140 @@
+package io.github.ai4ci.flow;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVPrinter;
+
+import io.github.ai4ci.RSimulation;
+import io.github.ai4ci.RSimulationObserver;
+import io.github.ai4ci.stats.Summary;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+
+@Slf4j
+/**
+ * Summarises named simulation observations across bootstraps as each
+ * simulation finishes, rather than keeping every row. Observations are
+ * grouped by configuration, parameterisation, observation name and
+ * timestep, and each group holds a streaming Summary (count, mean,
+ * variance and a quantile sketch) of the numeric values from each
+ * simulation. The summaries can be queried while simulations are still
+ * running, and written to a CSV file.
+ *
+ * Timesteps are numbered as in RSimulationRunnable.appendCsv().
+ */
+public class RSimulationAggregator<S extends RSimulation<S,?,?,?>> {
+
+	static final double[] QUANTILES = {0.025, 0.05, 0.25, 0.5, 0.75, 0.95, 0.975};
+
+	@Value
+	public static class Key implements Serializable {
+		String configuration;
+		String parameterisation;
+		String observation;
+		long timestep;
+	}
+
+	List<String> names;
+	Map<Key, Summary> summaries = new ConcurrentHashMap<>();
+	double accuracy;
+
+	public RSimulationAggregator(double accuracy, Enum<?>... names) {
+		this.accuracy = accuracy;
+		this.names = Stream.of(names).map(e -> e.name()).collect(Collectors.toList());
+	}
+
+	public RSimulationAggregator(Enum<?>... names) {
+		this(0.01, names);
+	}
+
+	/**
+	 * Add the named observations of a finished simulation. This may be
+	 * called concurrently.
+	 */
+	public void add(S simulation) {
+		String configuration = simulation.getConfiguration().getConfigurationName();
+		String parameterisation = simulation.getParameterisation().getParameterisationName();
+		long time = simulation.getSimTime();
+		simulation.getObservers()
+			.filter(o -> names.contains(o.getName()))
+			.forEach(o -> add(configuration, parameterisation, time, o));
+	}
+
+	private void add(String configuration, String parameterisation, long time, RSimulationObserver<S,?> observer) {
+		List<?> values = observer.getObservation();
+		for (int row = 0; row < values.size(); row++) {
+			Object value = values.get(row);
+			if (!(value instanceof Number)) continue;
+			Key key = new Key(configuration, parameterisation, observer.getName(), time - (row+1));
+			summaries.compute(key, (k,v) -> {
+				if (v == null) v = new Summary(accuracy);
+				v.add(((Number) value).doubleValue());
+				return v;
+			});
+		}
+	}
+
+	/**
+	 * A copy of the summary so far for a group.
+	 */
+	public Optional<Summary> get(String configuration, String parameterisation, Enum<?> observation, long timestep) {
+		return get(new Key(configuration, parameterisation, observation.name(), timestep));
+	}
+
+	public Optional<Summary> get(Key key) {
+		Summary[] out = new Summary[1];
+		summaries.computeIfPresent(key, (k,v) -> {
+			out[0] = v.copy();
+			return v;
+		});
+		return Optional.ofNullable(out[0]);
+	}
+
+	/**
+	 * The groups that have been summarised so far.
+	 */
+	public List<Key> keys() {
+		return summaries.keySet().stream()
+				.sorted(Comparator.comparing(Key::getConfiguration)
+						.thenComparing(Key::getParameterisation)
+						.thenComparing(Key::getObservation)
+						.thenComparing(Key::getTimestep))
+				.collect(Collectors.toList());
+	}
+
+	/**
+	 * Write the summaries so far to a CSV file, replacing it.
+	 */
+	public void writeCsv(File file) throws IOException {
+		try (CSVPrinter fw = new CSVPrinter(new FileWriter(file), CSVFormat.RFC4180)) {
+			List<Object> header = Stream.of("configuration","parameterisation","observation","timestep","count","mean","sd","min","max")
+					.collect(Collectors.toList());
+			Arrays.stream(QUANTILES).forEach(q -> header.add("q"+q));
+			fw.printRecord(header);
+			for (Key key: keys()) {
+				Optional<Summary> tmp = get(key);
+				if (!tmp.isPresent()) continue;
+				Summary s = tmp.get();
+				List<Object> row = Stream.<Object>of(
+						key.getConfiguration(), key.getParameterisation(), key.getObservation(), key.getTimestep(),
+						s.getCount(), s.getMean(), s.getSd(), s.getMin(), s.getMax())
+					.collect(Collectors.toList());
+				Arrays.stream(QUANTILES).forEach(q -> row.add(s.quantile(q)));
+				fw.printRecord(row);
+			}
+		}
+		log.info("[results] written summaries to: "+file.getAbsolutePath());
+	}
+}
@@ -4,11 +4,18 @@ import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Flow;
 import java.util.concurrent.Flow.Subscription;
 import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -35,12 +42,22 @@ public class RSimulationConsumer<
 
 	ThreadPoolExecutor executor;
 	List<ResultWriter> writers = new ArrayList<>();
+	Map<String, RSimulationAggregator<S>> aggregators = new LinkedHashMap<>();
+	RAdaptiveBootstraps<S,A> adaptive;
+	// further bootstraps waiting for the monitor to admit them
+	Queue<Supplier<RObservedSimulation<S,A>>> pending = new ConcurrentLinkedQueue<>();
 	Monitor monitor;
 	String directory;
 	boolean paused = true;
 	boolean upstreamComplete = false;
 	boolean complete = false;
 	
+	// how long finish() waits for running simulations, and how long the
+	// shutdown hook waits for them once they have been interrupted
+	static final long FINISH_TIMEOUT_MINUTES = 60;
+	static final long SHUTDOWN_TIMEOUT_SECONDS = 5;
+	private final AtomicBoolean closed = new AtomicBoolean(false);
+	
 
 	public RSimulationConsumer(String directory, int maxThreads) {
 		// ThreadFactory threadFactory = Executors.defaultThreadFactory();
@@ -68,22 +85,65 @@ public class RSimulationConsumer<
 		return this;
 	}
 	
+	/**
+	 * Stop now, e.g. from the shutdown hook. Running simulations are
+	 * interrupted and given a few seconds to stop, and the results so far
+	 * are written. Use finish() to wait for running simulations instead.
+	 */
 	public void shutdown() {
 		log.info("[consumer] shutting down simulation consumer.");
+		monitor.shutdown();
+		executor.shutdownNow();
+		awaitTermination(SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+		close();
+	}
+	
+	/**
+	 * Stop starting new simulations, wait for the running ones to finish, 
+	 * for up to an hour, and then write the results.
+	 */
+	public void finish() {
+		log.info("[consumer] finishing simulation consumer.");
+		monitor.shutdown();
 		executor.shutdown();
-		writers.forEach(a-> a.close());
-        try {
-			Thread.sleep(5000);
+		awaitTermination(FINISH_TIMEOUT_MINUTES, TimeUnit.MINUTES);
+		close();
+	}
+	
+	private void awaitTermination(long timeout, TimeUnit unit) {
+		try {
+			if (!executor.awaitTermination(timeout, unit)) 
+				log.warn("[consumer] simulations still running after "+timeout+" "+unit.name().toLowerCase()+" will not be in the results");
 		} catch (InterruptedException e) {
-			
+			log.warn("[consumer] interrupted waiting for simulations to finish");
+			Thread.currentThread().interrupt();
 		}
-        monitor.shutdown();
+	}
+	
+	// close the writers and write the aggregates, once only
+	private void close() {
+		if (!closed.compareAndSet(false, true)) return;
+		writers.forEach(a-> a.close());
+		aggregators.forEach((file,a) -> writeAggregate(file, a));
 	}
 
 	public boolean idle() {
 		return 
 				this.executor.getCompletedTaskCount() > 0 &&
-				this.executor.getTaskCount() == this.executor.getCompletedTaskCount();
+				this.executor.getTaskCount() == this.executor.getCompletedTaskCount() &&
+				this.pending.isEmpty();
+	}
+	
+	/**
+	 * Start the next pending bootstrap, if there is one. 
+	 * @return true if a simulation was started
+	 */
+	boolean admitPending() {
+		if (executor.isShutdown()) return false;
+		Supplier<RObservedSimulation<S,A>> next = pending.poll();
+		if (next == null) return false;
+		onNext(next.get());
+		return true;
 	}
 	
 //	public void collectCsv(String file, Enum<?>... names) throws IOException {
@@ -98,7 +158,7 @@ public class RSimulationConsumer<
 	public static class Monitor implements Runnable {
 		private RSimulationConsumer<?,?> pool;
 		private int seconds;
-		private boolean run = true;
+		private volatile boolean run = true;
 		private int uncommitted;
 
 		public Monitor(RSimulationConsumer<?,?> pool, int delay) {
@@ -137,9 +197,13 @@ public class RSimulationConsumer<
 				}
 				int freeThreads = this.pool.executor.getCorePoolSize() - this.pool.executor.getActiveCount();
 				// T
-				if (mbFree > 2*1024 && freeThreads > 0) {
+				if (run && !pool.executor.isShutdown() && mbFree > 2*1024 && freeThreads > 0) {
 					// more than 2 Gb free and unused threads in pool.
-					if (!pool.paused && !pool.upstreamComplete && uncommitted > 0) {
+					// further bootstraps are admitted before new simulations
+					if (!pool.paused && uncommitted > 0 && pool.admitPending()) {
+						log.info("[monitor] started a further bootstrap: "+mbFree+" Mb free; "+freeThreads+" threads available; "+uncommitted+" uncommitted.");
+						uncommitted -= 1;
+					} else if (!pool.paused && !pool.upstreamComplete && uncommitted > 0) {
 						log.info("[monitor] requesting a simulation to run: "+mbFree+" Mb free; "+freeThreads+" threads available; "+uncommitted+" uncommitted.");
 						pool.subscription.request(1);
 						uncommitted -= 1;
@@ -164,6 +228,35 @@ public class RSimulationConsumer<
 		return this;
 	}
 	
+	/**
+	 * Summarise named observations across simulations as they finish, 
+	 * rather than (or as well as) writing every row with a result writer. 
+	 * The aggregator can be queried while the simulations are running and is
+	 * written to the file when the consumer shuts down.
+	 */
+	public RSimulationConsumer<S,A> withAggregator(String file, RSimulationAggregator<S> aggregator) {
+		log.info("[results] configuring aggregator to file: "+file);
+		this.aggregators.put(file, aggregator);
+		return this;
+	}
+	
+	/**
+	 * Run more execution bootstraps of a parameterised simulation as each
+	 * finishes, until its targets are met, see RAdaptiveBootstraps.
+	 */
+	public RSimulationConsumer<S,A> withAdaptiveBootstraps(RAdaptiveBootstraps<S,A> adaptive) {
+		this.adaptive = adaptive;
+		return this;
+	}
+	
+	private void writeAggregate(String file, RSimulationAggregator<S> aggregator) {
+		try {
+			aggregator.writeCsv(new File(directory,file));
+		} catch (IOException e) {
+			log.warn("[results] could not write summaries to: "+file+"; "+e.getMessage());
+		}
+	}
+	
 	private Runnable wrap(RSimulationRunnable<S,A> runnable) {
 		return new Runnable() {
 			@Override
@@ -178,6 +271,9 @@ public class RSimulationConsumer<
 						log.warn("[results] could not write results for: "+runnable.getObsSim().getSimulation().getUrn()+"; "+rs.file+"; "+e.getMessage()); 
 					}
 				}
+				aggregators.values().forEach(a -> a.add(runnable.getObsSim().getSimulation()));
+				if (adaptive != null) adaptive.completed(runnable.getObsSim().getSimulation())
+					.ifPresent(pending::add);
 				monitor.release();
 			}
 		};
@@ -8,13 +8,13 @@ import java.util.Collection;
 import java.util.List;
 import java.util.concurrent.ThreadPoolExecutor;
 
-import org.apache.commons.lang3.SerializationUtils;
 import org.apache.commons.lang3.tuple.Pair;
 
 import io.github.ai4ci.RAgent;
 import io.github.ai4ci.RAgentObserver;
 import io.github.ai4ci.RObservedSimulation;
 import io.github.ai4ci.RObservedSimulation.State;
+import io.github.ai4ci.RShared;
 import io.github.ai4ci.RSimulation;
 import io.github.ai4ci.RSimulationConfiguration;
 import io.github.ai4ci.RSimulationObserver;
@@ -33,6 +33,8 @@ public class RSimulationFactory<
 	boolean useCache;
 	
 	long seedBase = 0;
+	int stepThreads = 0;
+	boolean commonRandomNumbers = false;
 	LocalDate reproduceAt = LocalDate.now();
 //	List<C> configurations = new ArrayList<C>();
 //	List<P> parameterisations = new ArrayList<P>();
@@ -102,6 +104,30 @@ public class RSimulationFactory<
 		return this;
 	}
 	
+	/**
+	 * Step and set up the agents within each simulation together, on this 
+	 * many threads.
+	 * The default (0) schedules agents individually. Any value of 1 or more 
+	 * gives the same results for the same seed, see RSimulation.setStepThreads.
+	 * @param threads the number of threads per simulation
+	 * @return
+	 */
+	public RSimulationFactory<S,C,P,A> withParallelStepping(int threads) {
+		this.stepThreads = threads;
+		return this;
+	}
+	
+	/**
+	 * Use common random numbers so that simulations which differ only in 
+	 * their parameterisation can be compared in pairs, bootstrap by 
+	 * bootstrap, see RSimulation.setCommonRandomNumbers.
+	 * @return
+	 */
+	public RSimulationFactory<S,C,P,A> withCommonRandomNumbers() {
+		this.commonRandomNumbers = true;
+		return this;
+	}
+	
 	@SafeVarargs
 	/**
 	 * Setup simulation observers to be added to each simulation.
@@ -156,16 +182,18 @@ public class RSimulationFactory<
 	 */
 	public RObservedSimulation<S,A> configure(RObservedSimulation<S,A> obsSim, Pair<Integer,C> config) {
 		if (obsSim.atOrBeyondStage(State.CONFIGURED)) return obsSim;
-		RObservedSimulation<S,A> copy = SerializationUtils.clone(obsSim);
+		RObservedSimulation<S,A> copy = RShared.clone(obsSim);
 		copy.getSimulation().setConfigurationBootstrapId(config.getKey());
 		copy.getSimulation().setSeed(seedBase);
+		copy.getSimulation().setStepThreads(stepThreads);
+		copy.getSimulation().setCommonRandomNumbers(commonRandomNumbers);
 		copy.getSimulation().setConfiguration(config.getValue());
 		log.debug("[pipeline] initialised simulation configuration bootstrap {}", copy.getSimulation().getUrn());
 		copy.getSimulation().setupStage1BeginConfiguration();
 		log.debug("[pipeline] building agents {}", copy.getSimulation().getUrn());
 		copy.getSimulation().setupStage2CreateAgents();
 		log.debug("[pipeline] setting agents baselines {}", copy.getSimulation().getUrn());
-		copy.getSimulation().streamAgents().forEach(a -> a.setupStage3SetAgentBaseline());
+		copy.getSimulation().setupAgents(3, a -> a.setupStage3SetAgentBaseline());
 		copy.getSimulation().setupStage4FinishConfiguration();
 		if (this.simulationObservers.size() + this.agentObservers.size() > 0) {
 			log.debug("[pipeline] setting up simulation observatory {}", copy.getSimulation().getUrn());
@@ -205,13 +233,15 @@ public class RSimulationFactory<
 	 */
 	public RObservedSimulation<S,A> parameterise(RObservedSimulation<S,A> obsSim, Pair<Integer,P> parameterisation) {
 		if (obsSim.atOrBeyondStage(State.PARAMETERISED)) return obsSim;
-		RObservedSimulation<S,A> copy = SerializationUtils.clone(obsSim);
+		RObservedSimulation<S,A> copy = RShared.clone(obsSim);
 		copy.getSimulation().setParameterisationBootstrapId(parameterisation.getKey());
 		copy.getSimulation().setSeed(seedBase);
+		copy.getSimulation().setStepThreads(stepThreads);
+		copy.getSimulation().setCommonRandomNumbers(commonRandomNumbers);
 		copy.getSimulation().setParameterisation(parameterisation.getValue());
 		log.debug("[pipeline] starting parameterisation {}", copy.getSimulation().getUrn());
 		copy.getSimulation().setupStage5StartParameterisation();
-		copy.getSimulation().streamAgents().forEach(a -> a.setupStage6InitialiseAgentStatus());
+		copy.getSimulation().setupAgents(6, a -> a.setupStage6InitialiseAgentStatus());
 		copy.getSimulation().setupStage7FinishParameterisation();
 		log.debug("[pipeline] finishing parameterisation {}", copy.getSimulation().getUrn());
 		copy.setState(State.PARAMETERISED);
@@ -230,9 +260,11 @@ public class RSimulationFactory<
 	 */
 	public RObservedSimulation<S,A> bootstrapExecutions(RObservedSimulation<S,A> obsSim, int bootstrapId) {
 		log.debug("[pipeline] execution simulation bootstrap {}", bootstrapId);
-		RObservedSimulation<S,A> copy = SerializationUtils.clone(obsSim);
+		RObservedSimulation<S,A> copy = RShared.clone(obsSim);
 		copy.getSimulation().setExecutionBootstrapId(bootstrapId);
 		copy.getSimulation().setSeed(seedBase);
+		copy.getSimulation().setStepThreads(stepThreads);
+		copy.getSimulation().setCommonRandomNumbers(commonRandomNumbers);
 		
 		if (copy.hasNamedObservers()) {
 			copy.initialiseObservatory();
@@ -252,6 +284,26 @@ public class RSimulationFactory<
 		
 	}
 	
+	/**
+	 * Bootstrap a batch of executions from one parameterised obsSim, with
+	 * consecutive bootstrap ids and so each with its own random stream. 
+	 * Anything in the simulation marked as RShared (e.g. a contact network) 
+	 * is shared by the whole batch rather than copied, so the batch can be
+	 * run in lockstep by an RReplicateBatch.
+	 * 
+	 * @param obsSim a parameterised obsSim
+	 * @param firstBootstrapId the bootstrap id of the first replicate
+	 * @param replicates the number of replicates
+	 * @return the replicates, ready to run
+	 */
+	public List<RObservedSimulation<S,A>> bootstrapBatch(RObservedSimulation<S,A> obsSim, int firstBootstrapId, int replicates) {
+		List<RObservedSimulation<S,A>> out = new ArrayList<>();
+		for (int i=0; i<replicates; i++) {
+			out.add(bootstrapExecutions(obsSim, firstBootstrapId+i));
+		}
+		return out;
+	}
+	
 	
 	
 }
@@ -10,6 +10,12 @@ public class DelayDistribution implements Serializable {
 	private double[] density;
 	private double[] cumulative;
 	private double[] hazard;
+	// affected[i] is the probability of being affected by day i-1, i.e. 
+	// affected(i) without the sample size.
+	private double[] affected;
+	// Alias tables for sampling (Vose's alias method)
+	private double[] aliasProbability;
+	private int[] alias;
 	private double sampleSize;
 	
 	public DelayDistribution(double[] probabilities) {
@@ -28,6 +34,48 @@ public class DelayDistribution implements Serializable {
 			this.cumulative[i] = this.density[i] + (i == 0 ? 0 : this.cumulative[i-1]); 
 			this.hazard[i] = this.density[i]/(i == 0 ? 1 : 1-this.cumulative[i-1]);
 		}
+		this.affected = new double[density.length+1];
+		for (int i = 0; i<density.length; i++) {
+			this.affected[i+1] = 1-(1-this.affected[i])*(1-this.density[i]);
+		}
+		buildAliasTable();
+	}
+	
+	private void buildAliasTable() {
+		int n = density.length;
+		aliasProbability = new double[n];
+		alias = new int[n];
+		if (n == 0) return;
+		double[] scaled = new double[n];
+		int[] small = new int[n];
+		int[] large = new int[n];
+		int smallSize = 0, largeSize = 0;
+		for (int i = 0; i<n; i++) {
+			scaled[i] = density[i]*n;
+			if (scaled[i] < 1) small[smallSize++] = i;
+			else large[largeSize++] = i;
+		}
+		while (smallSize > 0 && largeSize > 0) {
+			int l = small[--smallSize];
+			int g = large[--largeSize];
+			aliasProbability[l] = scaled[l];
+			alias[l] = g;
+			scaled[g] = (scaled[g] + scaled[l]) - 1;
+			if (scaled[g] < 1) small[smallSize++] = g;
+			else large[largeSize++] = g;
+		}
+		while (largeSize > 0) aliasProbability[large[--largeSize]] = 1;
+		// only left over due to rounding
+		while (smallSize > 0) aliasProbability[small[--smallSize]] = 1;
+	}
+	
+	/**
+	 * Draw a delay from this distribution in constant time, using the alias
+	 * method. The sample size is not used.
+	 */
+	public int sample(Sampler rng) {
+		int i = (int) (rng.uniform()*density.length);
+		return rng.uniform() < aliasProbability[i] ? i : alias[i];
 	}
 	
 	public double density(int x) {
@@ -90,11 +138,12 @@ public class DelayDistribution implements Serializable {
 		return affected(density.length);
 	}
 
+	/**
+	 * The probability of being affected on any of the days before this one,
+	 * if each day is independent.
+	 */
 	public double affected(int intValue) {
-		double out = 0.0D;
-		for (int i = 0; i<intValue; i++) {
-			out = 1-(1-out)*(1-density[i]);
-		}
-		return out*sampleSize;
+		if (intValue <= 0) return 0;
+		return affected[Math.min(intValue, density.length)]*sampleSize;
 	}
 }
@@ -0,0 +1,15 @@
+package io.github.ai4ci.stats;
+
+import java.io.Serializable;
+
+import org.apache.commons.rng.UniformRandomProvider;
+
+/**
+ * A uniform random source that can also produce standard normal deviates. This
+ * is the minimum a {@link Sampler} needs from its underlying generator.
+ */
+public interface GaussianRandomProvider extends UniformRandomProvider, Serializable {
+
+	public double nextGaussian();
+	
+}
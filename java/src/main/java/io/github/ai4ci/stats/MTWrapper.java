@@ -1,11 +1,9 @@
 package io.github.ai4ci.stats;
 
-import org.apache.commons.rng.UniformRandomProvider;
-
 import ec.util.MersenneTwisterFast;
 
-public class MTWrapper extends MersenneTwisterFast implements UniformRandomProvider {
+public class MTWrapper extends MersenneTwisterFast implements GaussianRandomProvider {
 	public MTWrapper(long seed) {
 		super(seed);
 	}
-}
\ No newline at end of file
+}
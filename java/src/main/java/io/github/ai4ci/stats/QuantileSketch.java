@@ -0,0 +1,93 @@
+package io.github.ai4ci.stats;
+
+import java.io.Serializable;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * A mergeable sketch of a distribution for finding approximate quantiles in
+ * a stream of values, after the DDSketch of Masson et al. (2019). Values are
+ * counted in buckets whose bounds grow geometrically, so that any quantile
+ * is found to within a relative accuracy, whatever the number of values.
+ * Sketches with the same accuracy can be merged by adding the counts in each
+ * bucket, e.g. to combine the results of different simulations.
+ *
+ * This is not thread safe.
+ */
+public class QuantileSketch implements Serializable {
+
+	private double accuracy;
+	private double logGamma;
+	private TreeMap<Integer,Long> positive = new TreeMap<>();
+	private TreeMap<Integer,Long> negative = new TreeMap<>();
+	private long zero = 0;
+	private long count = 0;
+
+	/**
+	 * @param accuracy the relative accuracy of the quantiles e.g. 0.01
+	 */
+	public QuantileSketch(double accuracy) {
+		if (accuracy <= 0 || accuracy >= 1) throw new RuntimeException("Accuracy must be between 0 and 1");
+		this.accuracy = accuracy;
+		this.logGamma = Math.log1p(2*accuracy/(1-accuracy));
+	}
+
+	public QuantileSketch() {
+		this(0.01);
+	}
+
+	private int index(double value) {
+		return (int) Math.ceil(Math.log(value)/logGamma);
+	}
+
+	private double value(int index) {
+		// the midpoint of the bucket in the relative sense
+		return 2*Math.exp(index*logGamma)/(1+Math.exp(logGamma));
+	}
+
+	public void add(double value) {
+		if (Double.isNaN(value)) return;
+		count += 1;
+		if (value > Double.MIN_NORMAL) positive.merge(index(value), 1L, Long::sum);
+		else if (value < -Double.MIN_NORMAL) negative.merge(index(-value), 1L, Long::sum);
+		else zero += 1;
+	}
+
+	public void merge(QuantileSketch other) {
+		if (other.accuracy != accuracy) throw new RuntimeException("Cannot merge sketches with different accuracy");
+		other.positive.forEach((k,v) -> positive.merge(k, v, Long::sum));
+		other.negative.forEach((k,v) -> negative.merge(k, v, Long::sum));
+		zero += other.zero;
+		count += other.count;
+	}
+
+	public long getCount() {
+		return count;
+	}
+
+	/**
+	 * The approximate value of a quantile, or NaN if there are no values.
+	 */
+	public double quantile(double q) {
+		if (count == 0) return Double.NaN;
+		long rank = (long) Math.floor(q*(count-1));
+		long seen = 0;
+		for (Map.Entry<Integer,Long> e: negative.descendingMap().entrySet()) {
+			seen += e.getValue();
+			if (seen > rank) return -value(e.getKey());
+		}
+		seen += zero;
+		if (seen > rank) return 0;
+		for (Map.Entry<Integer,Long> e: positive.entrySet()) {
+			seen += e.getValue();
+			if (seen > rank) return value(e.getKey());
+		}
+		return value(positive.lastKey());
+	}
+
+	public QuantileSketch copy() {
+		QuantileSketch out = new QuantileSketch(accuracy);
+		out.merge(this);
+		return out;
+	}
+}
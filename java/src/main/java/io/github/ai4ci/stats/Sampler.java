@@ -1,42 +1,107 @@
 package io.github.ai4ci.stats;
 
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
 
 import org.apache.commons.statistics.distribution.BinomialDistribution;
+import org.apache.commons.statistics.distribution.ContinuousDistribution;
+import org.apache.commons.statistics.distribution.DiscreteDistribution;
 import org.apache.commons.statistics.distribution.PascalDistribution;
 import org.apache.commons.statistics.distribution.PoissonDistribution;
 
-import ec.util.MersenneTwisterFast;
-
 /**
  * Extends the existing RNG to allow sampling from a normal, and log
  * normal distribution.
+ * 
+ * A sampler is not thread safe and must be confined to one thread at a
+ * time. Work that is done in parallel should use its own substream (see
+ * `substream()` and RAgent.sampler()), which are derived from a seed and
+ * keys rather than from the state of this stream, so the results do not
+ * depend on how the work is divided between threads.
  */
 public class Sampler implements Serializable {
 	
-	private MTWrapper random;
+	private GaussianRandomProvider random;
 	
-	public Sampler(MTWrapper random) {
+	public Sampler(GaussianRandomProvider random) {
 		this.random = random;
 	}
 	
-	public synchronized double uniform() {
+	/**
+	 * A sampler with its own lightweight random stream, e.g. for use by a 
+	 * single agent. 
+	 */
+	public static Sampler withSeed(long seed) {
+		return new Sampler(new SplitMix64(seed));
+	}
+	
+	/**
+	 * An independent stream for a unit of work identified by some keys (e.g.
+	 * an agent id and step number, or a partition number), derived from a 
+	 * base seed, typically `RSimulation.getSeed()`. This does not depend on 
+	 * the state of any other stream. 
+	 */
+	public static Sampler substream(long seed, long... keys) {
+		return withSeed(SplitMix64.seedFrom(seed, keys));
+	}
+	
+	/**
+	 * A new independent stream seeded from the next value of this one. 
+	 * The result depends on how much of this stream has been used, so this
+	 * should be called in a fixed order, e.g. before work is handed out to
+	 * threads.
+	 */
+	public Sampler split() {
+		return withSeed(SplitMix64.mix64(random.nextLong()));
+	}
+	
+	/**
+	 * Skip ahead a number of draws of the underlying generator. This lets a
+	 * stream be divided into non-overlapping blocks, e.g. one per partition
+	 * of a fixed sized piece of work. It is constant time for a SplitMix64
+	 * stream, and any other generator makes and discards the draws.
+	 */
+	public void jump(long draws) {
+		if (random instanceof SplitMix64) {
+			((SplitMix64) random).jump(draws);
+		} else {
+			for (long i=0; i<draws; i++) random.nextLong();
+		}
+	}
+	
+	/**
+	 * Reset the underlying stream. SplitMix64 and MTWrapper generators are
+	 * reseeded in place. Any other generator cannot be reseeded through its
+	 * interface, so is replaced by a SplitMix64 stream from the seed.
+	 */
+	public void setSeed(long seed) {
+		if (random instanceof SplitMix64) ((SplitMix64) random).setSeed(seed);
+		else if (random instanceof MTWrapper) ((MTWrapper) random).setSeed(seed);
+		else random = new SplitMix64(seed);
+	}
+	
+	public double uniform() {
 		return random.nextDouble();
 	}
 	
-	public synchronized double normal(double mean, double sd) {
+	public double normal(double mean, double sd) {
 		return random.nextGaussian()*sd+mean;
 	}
 	
-	public synchronized double logNormal(double mean, double sd) {
+	public double logNormal(double mean, double sd) {
 //		double mu = Math.log(mean/(Math.sqrt(Math.pow(sd/mean,2)+1)));
 //		double sigma = Math.sqrt(Math.log(Math.pow(sd/mean,2)+1));
 //		return Math.exp(random.nextGaussian()*sigma+mu);
-		return Commons.logNormalfromMeanAndSd(mean, sd).createSampler(random).sample();
+		return logNormalSampler(mean, sd).sample();
 		
 	}
 	
-	public synchronized double logitNormal(double median, double scale) {
+	public double logitNormal(double median, double scale) {
 		double mu = logit(median);
 		return invLogit(random.nextGaussian()*scale+mu);
 	}
@@ -49,17 +114,180 @@ public class Sampler implements Serializable {
 		return 1/(1+Math.exp(-x));
 	}
 	
-	public synchronized int poisson(double mean) {
-		return PoissonDistribution.of(mean).createSampler(random).sample();
+	public int poisson(double mean) {
+		return poissonSampler(mean).sample();
+	}
+	
+	public int negBinom(double mean, double sd) {
+		return negBinomSampler(mean, sd).sample();
+	}
+	
+	public int binom(int count, double probability) {
+		return binomSampler(count, probability).sample();
+	}
+	
+	// Bulk draws
+	// ==========
+	
+	/**
+	 * Fill an array with uniform random numbers.
+	 */
+	public void uniforms(double[] out) {
+		for (int i=0; i<out.length; i++) out[i] = random.nextDouble();
+	}
+	
+	/**
+	 * Fill an array with normally distributed random numbers.
+	 */
+	public void normals(double[] out, double mean, double sd) {
+		for (int i=0; i<out.length; i++) out[i] = random.nextGaussian()*sd+mean;
+	}
+	
+	/**
+	 * Select each of the indexes 0 to n-1 independently with probability p,
+	 * in increasing order. This draws the gaps between selected indexes from
+	 * a geometric distribution, so costs one draw per selected index rather
+	 * than one per index.
+	 */
+	public int[] bernoulliSubset(int n, double p) {
+		if (n <= 0 || p <= 0) return new int[0];
+		if (p >= 1) {
+			int[] all = new int[n];
+			for (int i=0; i<n; i++) all[i] = i;
+			return all;
+		}
+		double logQ = Math.log1p(-p);
+		int[] out = new int[Math.min(n, (int) (n*p*1.5) + 4)];
+		int size = 0;
+		long index = -1;
+		while (true) {
+			index += 1 + geometricSkip(logQ);
+			if (index >= n) break;
+			if (size == out.length) out = Arrays.copyOf(out, Math.min(n, out.length*2));
+			out[size++] = (int) index;
+		}
+		return Arrays.copyOf(out, size);
+	}
+	
+	/**
+	 * A random subset of a list, keeping each item with probability p, in 
+	 * their original order (see `bernoulliSubset()`).
+	 */
+	public <X> List<X> thin(List<X> items, double p) {
+		int[] selected = bernoulliSubset(items.size(), p);
+		List<X> out = new ArrayList<>(selected.length);
+		for (int i: selected) out.add(items.get(i));
+		return out;
+	}
+	
+	/**
+	 * The number of successes in each of a set of binomial trials with the
+	 * same probability. Each count is found by geometric skipping as in 
+	 * `bernoulliSubset()`, so the cost depends on the number of successes, 
+	 * unless the probability is more than a half, when the failures are 
+	 * counted instead.
+	 */
+	public int[] binoms(int[] counts, double probability) {
+		int[] out = new int[counts.length];
+		if (probability <= 0) return out;
+		if (probability >= 1) return Arrays.copyOf(counts, counts.length);
+		boolean failures = probability > 0.5;
+		double logQ = Math.log1p(-(failures ? 1-probability : probability));
+		for (int i=0; i<counts.length; i++) {
+			int successes = 0;
+			long index = -1;
+			while (true) {
+				index += 1 + geometricSkip(logQ);
+				if (index >= counts[i]) break;
+				successes++;
+			}
+			out[i] = failures ? counts[i] - successes : successes;
+		}
+		return out;
+	}
+	
+	/**
+	 * The number of failures before the next success, given log(1-p)
+	 */
+	private long geometricSkip(double logQ) {
+		double u = 1 - random.nextDouble(); // in (0,1]
+		double skip = Math.floor(Math.log(u) / logQ);
+		return skip >= Integer.MAX_VALUE ? Integer.MAX_VALUE : (long) skip;
+	}
+	
+	// Distribution samplers
+	// =====================
+	
+	// The samplers below are bound to this stream, and are kept for reuse
+	// keyed by their parameters, rather than being built for every draw. 
+	// The commons samplers used keep no state between draws other than the
+	// stream, so reusing one gives the same values as a new one would.
+	
+	/**
+	 * The number of distribution samplers kept per Sampler. The least 
+	 * recently used is dropped when this is exceeded. 
+	 */
+	static final int CACHE_SIZE = 32;
+	
+	private transient Map<Key, Object> samplers;
+	
+	private static class Key {
+		final int type;
+		final double a;
+		final double b;
+		Key(int type, double a, double b) {
+			this.type = type;
+			this.a = a;
+			this.b = b;
+		}
+		public boolean equals(Object o) {
+			if (!(o instanceof Key)) return false;
+			Key k = (Key) o;
+			return k.type == type && Double.compare(k.a, a) == 0 && Double.compare(k.b, b) == 0;
+		}
+		public int hashCode() {
+			return 31*(31*type + Double.hashCode(a)) + Double.hashCode(b);
+		}
+	}
+	
+	@SuppressWarnings("unchecked")
+	private <X> X cached(int type, double a, double b, Supplier<X> create) {
+		if (samplers == null) samplers = new LinkedHashMap<Key, Object>(CACHE_SIZE*2, 0.75f, true) {
+			protected boolean removeEldestEntry(Map.Entry<Key, Object> eldest) {
+				return size() > CACHE_SIZE;
+			}
+		};
+		Key key = new Key(type, a, b);
+		Object tmp = samplers.get(key);
+		if (tmp == null) {
+			tmp = create.get();
+			samplers.put(key, tmp);
+		}
+		return (X) tmp;
+	}
+	
+	/**
+	 * A log normal sampler on this stream, parameterised by its mean and
+	 * standard deviation. This can be held by the caller and reused, as long
+	 * as it is used from the same thread as this Sampler.
+	 */
+	public ContinuousDistribution.Sampler logNormalSampler(double mean, double sd) {
+		return cached(0, mean, sd, () -> Commons.logNormalfromMeanAndSd(mean, sd).createSampler(random));
+	}
+	
+	public DiscreteDistribution.Sampler poissonSampler(double mean) {
+		return cached(1, mean, 0, () -> PoissonDistribution.of(mean).createSampler(random));
 	}
 	
-	public synchronized int negBinom(double mean, double sd) {
-		int r = (int) Math.round((mean*mean) / (sd*sd - mean));
-		double p = mean / (sd*sd);
-		return PascalDistribution.of(r,p).createSampler(random).sample();
+	public DiscreteDistribution.Sampler negBinomSampler(double mean, double sd) {
+		return cached(2, mean, sd, () -> {
+			int r = (int) Math.round((mean*mean) / (sd*sd - mean));
+			double p = mean / (sd*sd);
+			return PascalDistribution.of(r,p).createSampler(random);
+		});
 	}
 	
-	public synchronized int binom(int count, double probability) {
-		return BinomialDistribution.of(count,probability).createSampler(random).sample();
+	public DiscreteDistribution.Sampler binomSampler(int count, double probability) {
+		return cached(3, count, probability, () -> BinomialDistribution.of(count,probability).createSampler(random));
 	}
 }
\ No newline at end of file
@@ -0,0 +1,94 @@
+package io.github.ai4ci.stats;
+
+/**
+ * A very small (one long of state) random number generator based on the
+ * SplitMix64 algorithm. This is intended for cases where a large number of 
+ * independent streams are needed, e.g. one per agent, and a Mersenne twister
+ * per stream (~2.5Kb of state) would be too heavy. Re-seeding is a single 
+ * assignment so a stream can be cheaply reset to a deterministic position at 
+ * the start of every simulation step.
+ * 
+ * This is not thread safe, and each instance is expected to be confined to 
+ * a single thread at any one time.
+ */
+public class SplitMix64 implements GaussianRandomProvider {
+
+	private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+	
+	private long state;
+	private double nextNextGaussian;
+	private boolean haveNextNextGaussian = false;
+	
+	public SplitMix64(long seed) {
+		this.setSeed(seed);
+	}
+	
+	public void setSeed(long seed) {
+		this.state = seed;
+		this.haveNextNextGaussian = false;
+	}
+	
+	/**
+	 * Advance the stream by a number of calls to `nextLong()` in constant
+	 * time. 
+	 */
+	public void jump(long draws) {
+		this.state += draws * GOLDEN_GAMMA;
+		this.haveNextNextGaussian = false;
+	}
+	
+	@Override
+	public long nextLong() {
+		return mix64(state += GOLDEN_GAMMA);
+	}
+	
+	@Override
+	public double nextDouble() {
+		return (nextLong() >>> 11) * 0x1.0p-53;
+	}
+	
+	/**
+	 * Polar form of the Box-Muller transform, caching the second deviate, as
+	 * per the MersenneTwisterFast implementation.
+	 */
+	@Override
+	public double nextGaussian() {
+		if (haveNextNextGaussian) {
+			haveNextNextGaussian = false;
+			return nextNextGaussian;
+		}
+		double v1, v2, s;
+		do {
+			v1 = 2 * nextDouble() - 1;
+			v2 = 2 * nextDouble() - 1;
+			s = v1 * v1 + v2 * v2;
+		} while (s >= 1 || s == 0);
+		double multiplier = StrictMath.sqrt(-2 * StrictMath.log(s)/s);
+		nextNextGaussian = v2 * multiplier;
+		haveNextNextGaussian = true;
+		return v1 * multiplier;
+	}
+	
+	/**
+	 * The SplitMix64 finaliser (a variant of the MurmurHash3 mixer).
+	 */
+	public static long mix64(long z) {
+		z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+		z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+		return z ^ (z >>> 31);
+	}
+	
+	/**
+	 * Combine a base seed with any number of keys (e.g. an agent id and a 
+	 * step number) to give a well distributed seed for an independent stream.
+	 * The result depends only on the inputs, and not on the order in which
+	 * streams are created, so is safe to use from multiple threads.
+	 */
+	public static long seedFrom(long seed, long... keys) {
+		long tmp = mix64(seed + GOLDEN_GAMMA);
+		for (long key: keys) {
+			tmp = mix64(tmp ^ mix64(key + GOLDEN_GAMMA));
+		}
+		return tmp;
+	}
+}
@@ -0,0 +1,100 @@
+package io.github.ai4ci.stats;
+
+import java.io.Serializable;
+
+/**
+ * A streaming summary of a set of values: the count, mean, variance, range
+ * and a quantile sketch. Values are added one at a time using Welford's
+ * method, and summaries of separate sets of values can be merged, using the
+ * pairwise update of Chan et al., so the result does not need the values to
+ * be kept.
+ *
+ * This is not thread safe.
+ */
+public class Summary implements Serializable {
+
+	private long count = 0;
+	private double mean = 0;
+	private double m2 = 0;
+	private double min = Double.POSITIVE_INFINITY;
+	private double max = Double.NEGATIVE_INFINITY;
+	private QuantileSketch sketch;
+
+	public Summary(double accuracy) {
+		this.sketch = new QuantileSketch(accuracy);
+	}
+
+	public Summary() {
+		this.sketch = new QuantileSketch();
+	}
+
+	public void add(double value) {
+		if (Double.isNaN(value)) return;
+		count += 1;
+		double delta = value - mean;
+		mean += delta/count;
+		m2 += delta*(value - mean);
+		min = Math.min(min, value);
+		max = Math.max(max, value);
+		sketch.add(value);
+	}
+
+	public void merge(Summary other) {
+		if (other.count == 0) return;
+		long total = count + other.count;
+		double delta = other.mean - mean;
+		mean += delta*other.count/total;
+		m2 += other.m2 + delta*delta*((double) count)*other.count/total;
+		count = total;
+		min = Math.min(min, other.min);
+		max = Math.max(max, other.max);
+		sketch.merge(other.sketch);
+	}
+
+	public long getCount() {
+		return count;
+	}
+
+	public double getMean() {
+		return count == 0 ? Double.NaN : mean;
+	}
+
+	/**
+	 * The sample variance.
+	 */
+	public double getVariance() {
+		return count < 2 ? Double.NaN : m2/(count-1);
+	}
+
+	public double getSd() {
+		return Math.sqrt(getVariance());
+	}
+
+	public double getMin() {
+		return count == 0 ? Double.NaN : min;
+	}
+
+	public double getMax() {
+		return count == 0 ? Double.NaN : max;
+	}
+
+	/**
+	 * An approximate quantile from the sketch, clamped to the range of the
+	 * values.
+	 */
+	public double quantile(double q) {
+		if (count == 0) return Double.NaN;
+		return Math.max(min, Math.min(max, sketch.quantile(q)));
+	}
+
+	public Summary copy() {
+		Summary out = new Summary();
+		out.sketch = sketch.copy();
+		out.count = count;
+		out.mean = mean;
+		out.m2 = m2;
+		out.min = min;
+		out.max = max;
+		return out;
+	}
+}
@@ -1,11 +1,13 @@
 package io.github.ai4ci.testModel;
 
+import java.io.Serializable;
 import java.util.Optional;
 
 import org.apache.commons.statistics.distribution.LogNormalDistribution;
 
 import io.github.ai4ci.RAgentBaseline;
 import io.github.ai4ci.RAgentStatus;
+import io.github.ai4ci.RColumnStore;
 import io.github.ai4ci.RSimulationConfiguration;
 import io.github.ai4ci.RSimulationParameterisation;
 import io.github.ai4ci.stats.Commons;
@@ -37,6 +39,44 @@ public class Configuration {
 		 */
 		private double networkRandomness;
 		
+		/**
+		 * Hold the agent status in columns (see AgentStatus.Columns) rather 
+		 * than a bean per agent.
+		 */
+		@Builder.Default private boolean columnarAgentStatus = false;
+		
+		/**
+		 * How transmission is calculated. PULL: every susceptible checks all 
+		 * its contacts for infected people. PUSH: infected people mark their 
+		 * susceptible contacts as exposed. AUTO: chooses between these each 
+		 * step depending on the relative number of infected and susceptible
+		 * people.
+		 */
+		@Builder.Default private TransmissionMode transmissionMode = TransmissionMode.AUTO;
+		
+		public static enum TransmissionMode {PULL, PUSH, AUTO};
+		
+		/**
+		 * How the outbreak is simulated. STEP: every person is stepped every 
+		 * day. EVENT: transmission and recovery times are sampled when someone
+		 * is infected and processed as events (see OutbreakEvents). This
+		 * does not model testing or behaviour change, so control measures have
+		 * no effect.
+		 */
+		@Builder.Default private Engine engine = Engine.STEP;
+		
+		public static enum Engine {STEP, EVENT};
+		
+		/**
+		 * Switch to a compartmental model (see OutbreakAggregate) when the 
+		 * number of people infected reaches this, and back to individual 
+		 * people when it falls below `hybridLowerThreshold`. Zero means 
+		 * people are always modelled individually. This only applies to the 
+		 * STEP engine.
+		 */
+		@Builder.Default private int hybridUpperThreshold = 0;
+		@Builder.Default private int hybridLowerThreshold = 0;
+		
 		public double getR0PerContactPerStep() {
 		// Based on the heurisitic for deciding whether on not a given contact is active per step this defines the 
 		// number of contacts per step.
@@ -140,7 +180,7 @@ public class Configuration {
 	
 	public static AgentStatus statusFrom(OutbreakConfig configuration, OutbreakParameters params, AgentBaseline baseline, Sampler rng) {
 		
-		return AgentStatus.builder()
+		return AgentStatus.Bean.builder()
 				.baseProbabilityOfTesting(
 					// TODO: paramaterise this?
 					0.01	
@@ -155,9 +195,12 @@ public class Configuration {
 				.build();
 	}
 	
-	@Data
-	@Builder
-	public static class AgentStatus implements RAgentStatus {
+	/**
+	 * The status of a Person. This is either held in a java bean 
+	 * (`AgentStatus.Bean`) or if the configuration has `columnarAgentStatus`
+	 * set, as a view on a row of the columns in `AgentStatus.Columns`.
+	 */
+	public static interface AgentStatus extends RAgentStatus {
 
 		public enum State {SUSCEPTIBLE, INFECTED, RECOVERED}
 		
@@ -166,16 +209,160 @@ public class Configuration {
 		 * At the moment this cannot go above 1, and cannot go below the lockdown
 		 * minimum.
 		 */
-		@Builder.Default private double contactRateAdjustment = 1.0;
+		public double getContactRateAdjustment();
+		public AgentStatus setContactRateAdjustment(double contactRateAdjustment);
 		
 		/**
 		 * Given an infectious contact 
 		 */
-		double probabilityInfectionGivenInfectiousContact;
-		double baseProbabilityOfTesting;
-		@NonNull @Builder.Default State state = State.SUSCEPTIBLE;
-		@Builder.Default long lastTested = NA_LONG;
-		@Builder.Default long lastInfected = NA_LONG;
+		public double getProbabilityInfectionGivenInfectiousContact();
+		public AgentStatus setProbabilityInfectionGivenInfectiousContact(double probabilityInfectionGivenInfectiousContact);
+		public double getBaseProbabilityOfTesting();
+		public AgentStatus setBaseProbabilityOfTesting(double baseProbabilityOfTesting);
+		public State getState();
+		public AgentStatus setState(State state);
+		public long getLastTested();
+		public AgentStatus setLastTested(long lastTested);
+		public long getLastInfected();
+		public AgentStatus setLastInfected(long lastInfected);
+		
+		@Data
+		@Builder
+		public static class Bean implements AgentStatus {
+			
+			@Builder.Default private double contactRateAdjustment = 1.0;
+			double probabilityInfectionGivenInfectiousContact;
+			double baseProbabilityOfTesting;
+			@NonNull @Builder.Default State state = State.SUSCEPTIBLE;
+			@Builder.Default long lastTested = NA_LONG;
+			@Builder.Default long lastInfected = NA_LONG;
+			
+		}
+		
+		/**
+		 * The agent status of a whole population held as columns. The contact
+		 * rate (i.e. the baseline contact rate with the current adjustment) is
+		 * also kept as a column so it can be scanned directly.
+		 */
+		public static class Columns implements Serializable {
+			
+			RColumnStore store;
+			RColumnStore.DoubleColumn contactRateAdjustment;
+			RColumnStore.DoubleColumn probabilityInfectionGivenInfectiousContact;
+			RColumnStore.DoubleColumn baseProbabilityOfTesting;
+			RColumnStore.EnumColumn<State> state;
+			RColumnStore.LongColumn lastTested;
+			RColumnStore.LongColumn lastInfected;
+			RColumnStore.DoubleColumn baselineContactRate;
+			RColumnStore.DoubleColumn contactRate;
+			
+			public Columns(int size) {
+				store = new RColumnStore(size);
+				contactRateAdjustment = store.doubleColumn(1.0);
+				probabilityInfectionGivenInfectiousContact = store.doubleColumn(0);
+				baseProbabilityOfTesting = store.doubleColumn(0);
+				state = store.enumColumn(State.class, State.SUSCEPTIBLE);
+				lastTested = store.longColumn(NA_LONG);
+				lastInfected = store.longColumn(NA_LONG);
+				baselineContactRate = store.doubleColumn(0);
+				contactRate = store.doubleColumn(0);
+			}
+			
+			public RColumnStore getStore() {return store;}
+			public RColumnStore.EnumColumn<State> getState() {return state;}
+			public RColumnStore.LongColumn getLastInfected() {return lastInfected;}
+			public RColumnStore.DoubleColumn getContactRate() {return contactRate;}
+			
+			/**
+			 * Copy an initial status into the columns and return a view on it.
+			 */
+			public Columnar initialise(int id, AgentBaseline baseline, AgentStatus initial) {
+				Columnar tmp = new Columnar(this, id, false);
+				baselineContactRate.set(id, baseline.getContactRate());
+				tmp.setContactRateAdjustment(initial.getContactRateAdjustment());
+				tmp.setProbabilityInfectionGivenInfectiousContact(initial.getProbabilityInfectionGivenInfectiousContact());
+				tmp.setBaseProbabilityOfTesting(initial.getBaseProbabilityOfTesting());
+				tmp.setState(initial.getState());
+				tmp.setLastTested(initial.getLastTested());
+				tmp.setLastInfected(initial.getLastInfected());
+				return tmp;
+			}
+		}
+		
+		/**
+		 * A view on a row of the Columns, either on the current values or on 
+		 * the values at the start of the step, which are read only.
+		 */
+		public static class Columnar implements AgentStatus, RColumnStore.View<AgentStatus> {
+			
+			Columns columns;
+			int id;
+			boolean old;
+			
+			Columnar(Columns columns, int id, boolean old) {
+				this.columns = columns;
+				this.id = id;
+				this.old = old;
+			}
+			
+			public AgentStatus previous() {
+				return new Columnar(columns, id, true);
+			}
+			
+			private void checkWritable() {
+				if (old) throw new RuntimeException("The previous status of an agent cannot be changed");
+			}
+			
+			public double getContactRateAdjustment() {
+				return old ? columns.contactRateAdjustment.getOld(id) : columns.contactRateAdjustment.get(id);
+			}
+			public AgentStatus setContactRateAdjustment(double contactRateAdjustment) {
+				checkWritable();
+				columns.contactRateAdjustment.set(id, contactRateAdjustment);
+				columns.contactRate.set(id, columns.baselineContactRate.get(id)*contactRateAdjustment);
+				return this;
+			}
+			public double getProbabilityInfectionGivenInfectiousContact() {
+				return old ? columns.probabilityInfectionGivenInfectiousContact.getOld(id) : columns.probabilityInfectionGivenInfectiousContact.get(id);
+			}
+			public AgentStatus setProbabilityInfectionGivenInfectiousContact(double probabilityInfectionGivenInfectiousContact) {
+				checkWritable();
+				columns.probabilityInfectionGivenInfectiousContact.set(id, probabilityInfectionGivenInfectiousContact);
+				return this;
+			}
+			public double getBaseProbabilityOfTesting() {
+				return old ? columns.baseProbabilityOfTesting.getOld(id) : columns.baseProbabilityOfTesting.get(id);
+			}
+			public AgentStatus setBaseProbabilityOfTesting(double baseProbabilityOfTesting) {
+				checkWritable();
+				columns.baseProbabilityOfTesting.set(id, baseProbabilityOfTesting);
+				return this;
+			}
+			public State getState() {
+				return old ? columns.state.getOldValue(id) : columns.state.getValue(id);
+			}
+			public AgentStatus setState(State state) {
+				checkWritable();
+				columns.state.setValue(id, state);
+				return this;
+			}
+			public long getLastTested() {
+				return old ? columns.lastTested.getOld(id) : columns.lastTested.get(id);
+			}
+			public AgentStatus setLastTested(long lastTested) {
+				checkWritable();
+				columns.lastTested.set(id, lastTested);
+				return this;
+			}
+			public long getLastInfected() {
+				return old ? columns.lastInfected.getOld(id) : columns.lastInfected.get(id);
+			}
+			public AgentStatus setLastInfected(long lastInfected) {
+				checkWritable();
+				columns.lastInfected.set(id, lastInfected);
+				return this;
+			}
+		}
 		
 	}
 	
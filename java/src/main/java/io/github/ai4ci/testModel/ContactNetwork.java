@@ -0,0 +1,85 @@
+package io.github.ai4ci.testModel;
+
+import java.io.Serializable;
+import java.util.function.Supplier;
+
+import org.jgrapht.Graph;
+import org.jgrapht.Graphs;
+import org.jgrapht.graph.DefaultWeightedEdge;
+
+import io.github.ai4ci.RShared;
+
+/**
+ * The contact network as adjacency arrays indexed by person id, i.e. the
+ * contacts of person i are the edges from start(i) to end(i)-1, each with
+ * the id of the contact and the weight of the connection (a quantile of
+ * connection strength). This is built once during configuration and shared
+ * by all the simulations cloned from the configured one (see RShared).
+ */
+public class ContactNetwork implements RShared {
+
+	private int[] offsets;
+	private int[] targets;
+	private double[] weights;
+
+	/**
+	 * Copy an undirected graph on person ids.
+	 */
+	ContactNetwork(Graph<Integer, DefaultWeightedEdge> graph, int size) {
+		offsets = new int[size+1];
+		for (int i=0; i<size; i++) offsets[i+1] = offsets[i] + graph.degreeOf(i);
+		targets = new int[offsets[size]];
+		weights = new double[offsets[size]];
+		for (int i=0; i<size; i++) {
+			int e = offsets[i];
+			for (DefaultWeightedEdge edge: graph.edgesOf(i)) {
+				targets[e] = Graphs.getOppositeVertex(graph, edge, i);
+				weights[e] = graph.getEdgeWeight(edge);
+				e++;
+			}
+		}
+	}
+
+	public int size() {
+		return offsets.length-1;
+	}
+
+	public int edgeCount() {
+		return targets.length/2;
+	}
+
+	public int start(int id) {
+		return offsets[id];
+	}
+
+	public int end(int id) {
+		return offsets[id+1];
+	}
+
+	public int degree(int id) {
+		return offsets[id+1] - offsets[id];
+	}
+
+	/**
+	 * The id of the contact at the other end of an edge.
+	 */
+	public int target(int edge) {
+		return targets[edge];
+	}
+
+	/**
+	 * The quantile of connection strength of an edge. This is compared to a
+	 * person's contact rate to decide if the contact happens on a given day.
+	 */
+	public double weight(int edge) {
+		return weights[edge];
+	}
+
+	/**
+	 * Numbers the vertices of a generated graph from 0.
+	 */
+	static class Ids implements Supplier<Integer>, Serializable {
+		int next = 0;
+		public Integer get() {return next++;}
+	}
+}
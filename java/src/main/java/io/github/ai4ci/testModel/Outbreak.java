@@ -1,23 +1,36 @@
 package io.github.ai4ci.testModel;
 
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.function.Supplier;
+import java.util.stream.Collector;
 import java.util.stream.Collectors;
-import java.util.stream.Stream;
-import java.util.stream.StreamSupport;
 
 import org.jgrapht.generate.WattsStrogatzGraphGenerator;
+import org.jgrapht.graph.DefaultWeightedEdge;
 import org.jgrapht.graph.DirectedAcyclicGraph;
 import org.jgrapht.graph.SimpleWeightedGraph;
 
+import io.github.ai4ci.RColumnStore;
 import io.github.ai4ci.RObserver;
+import io.github.ai4ci.RReducer;
 import io.github.ai4ci.RSimulation;
 import io.github.ai4ci.RSimulationObserver;
+import io.github.ai4ci.RStateCounter;
 import io.github.ai4ci.RSteppable;
 import io.github.ai4ci.stats.Binomial;
+import io.github.ai4ci.stats.Sampler;
+import io.github.ai4ci.stats.SplitMix64;
+import io.github.ai4ci.stats.DelayDistribution;
 import io.github.ai4ci.testModel.Configuration.AgentStatus.State;
+import io.github.ai4ci.testModel.Configuration.OutbreakConfig.Engine;
 import io.github.ai4ci.testModel.Configuration.OutbreakParameters.LockdownState;
 import io.github.ai4ci.testModel.TestResult.Result;
 import lombok.extern.slf4j.Slf4j;
@@ -31,10 +44,51 @@ public class Outbreak extends RSimulation<Outbreak,
 	@Override
 	public Outbreak self() {return this;}
 	
-	private SimpleWeightedGraph<Person, Person.Relationship> contacts;
+	private ContactNetwork contacts;
 	private DirectedAcyclicGraph<Person, Person.Infection> infections;
+	private Configuration.AgentStatus.Columns statusColumns;
 	
-	public enum Observations {INCIDENCE, CONTACT_RATES, TEST_POSITIVES, TESTS_PERFORMED, RT_EFFECTIVE};
+	// The infection frontier, i.e. everyone currently infected, and the
+	// number in each state. These are updated by `stateChanged()`
+	private BitSet infected = new BitSet();
+	private RStateCounter<State> states = new RStateCounter<>(State.class);
+	// Exposures of susceptible people to infected contacts for this step, 
+	// when transmission is being pushed from the infected. 
+	private boolean pushTransmission = false;
+	private transient Map<Integer, List<Person>> exposures = new HashMap<>();
+	// The event queue if the configuration uses the event driven engine
+	private OutbreakEvents events;
+	// The compartments while the hybrid mode is aggregated
+	private OutbreakAggregate aggregate;
+	// Lookup tables for the parameterisation
+	private volatile OutbreakKernel kernel;
+	// The number of people infected on each day and the number of people
+	// they went on to infect. These are updated by `recordInfection()`
+	private long[] infectionsByDay = new long[0];
+	private long[] secondaryByDay = new long[0];
+	// Summaries of all the people, found together in one pass per step
+	private RReducer<Person, Long> incidence;
+	private RReducer<Person, Double> infectiousness;
+	private RReducer<Person, Binomial> positivity;
+	private RReducer<Person, Double> contactRate;
+	
+	/**
+	 * When choosing between push and pull transmission push is used while the
+	 * number of infected people is less than this fraction of the number
+	 * susceptible. Pushing costs more per contact than pulling so this is not
+	 * 1, along the lines of the direction optimising breadth first search of
+	 * Beamer et al. (2012).
+	 */
+	static final double PUSH_PULL_RATIO = 1.0/4;
+	
+	// Purpose of the random draws for the imported infections which are
+	// common between parameterisations (see RSimulation.setCommonRandomNumbers)
+	static final long IMPORTED_INFECTIONS = 1;
+	// Key for the seed of the contact network
+	static final long NETWORK = 2;
+	
+	public enum Observations {INCIDENCE, CONTACT_RATES, TEST_POSITIVES, TESTS_PERFORMED, RT_EFFECTIVE, RT_ESTIMATE};
+	public enum Reductions {INCIDENCE, INFECTIOUSNESS, POSITIVITY, CONTACT_RATES};
 	
 	@Override
 	protected boolean checkComplete() {
@@ -47,10 +101,7 @@ public class Outbreak extends RSimulation<Outbreak,
 
 	private static RSimulationObserver<Outbreak, Long> inState(State state) {
 		return RObserver.simulationHistory(state, Long.class,
-				s -> Optional.of(
-						s.streamAgents()
-						.filter(a -> a.getStatus().getState().equals(state))
-						.count()),
+				s -> Optional.of(s.stateCount(state)),
 				null
 			);
 	}
@@ -59,12 +110,35 @@ public class Outbreak extends RSimulation<Outbreak,
 	@Override
 	public void setupStage1BeginConfiguration() {
 		
+		if (this.getConfiguration().isColumnarAgentStatus()) {
+			this.statusColumns = new Configuration.AgentStatus.Columns(this.getConfiguration().getPopulationSize());
+			this.setColumnStore(statusColumns.getStore());
+		}
+		
+		this.incidence = this.registerReducer(Reductions.INCIDENCE, () ->
+				Collectors.filtering(a -> a.infectedToday(), Collectors.counting()));
+		this.infectiousness = this.registerReducer(Reductions.INFECTIOUSNESS, () ->
+				Collectors.filtering(a -> a.getStatus().getState().equals(State.INFECTED), 
+						Collectors.summingDouble(a -> a.infectiousness())));
+		this.positivity = this.registerReducer(Reductions.POSITIVITY, () ->
+				Collector.of(() -> Binomial.of(0, 0), 
+						(b, a) -> a.resultToday().forEach(r -> b.update(r.resultOnDay(a.getSimTime()).equals(Result.POSITIVE) ? 1 : 0, 1)),
+						Binomial::combine));
+		this.contactRate = this.registerReducer(Reductions.CONTACT_RATES, () ->
+				Collectors.averagingInt(a -> a.getContacts().size()));
+		
 		this.registerNamedObserver(inState(State.SUSCEPTIBLE));
 		this.registerNamedObserver(inState(State.INFECTED));
 		this.registerNamedObserver(inState(State.RECOVERED));
 		this.registerNamedObserver(RObserver.simulationHistory(
 				Observations.INCIDENCE, Long.class, 
-				s -> s.streamAgents().map(a -> a.infectedToday() ? 1L : 0L).reduce((x,y) -> x+y ),
+				s -> s.isEventDriven() ? 
+						Optional.of(s.events.getIncidence(s.getSimTime())) :
+					s.isAggregated() ?
+						Optional.of(s.aggregate.getIncidence(s.getSimTime())) :
+					s.getStatusColumns().isPresent() ? 
+						Optional.of(s.incidenceFromColumns()) :
+						Optional.of(s.getReduced(s.incidence)),
 				null
 		));
 		this.registerNamedObserver(RObserver.simulationHistory(
@@ -87,12 +161,15 @@ public class Outbreak extends RSimulation<Outbreak,
 				s -> Optional.of(((Outbreak) s).getRtEffective()),
 				null
 		));
+		// This is updated after the incidence
+		this.registerNamedObserver(RObserver.simulationRt(
+				Observations.RT_ESTIMATE,
+				s -> s.getLastNamedObservation(Observations.INCIDENCE, Long.class).orElse(0L),
+				s -> s.getParameterisation().getInfectivityProfile(),
+				null
+		));
 		//		,
 		
-		this.contacts =  new SimpleWeightedGraph<>(
-				(Serializable & Supplier<Person>) () -> new Person(this),
-				(Serializable & Supplier<Person.Relationship>) () -> new Person.Relationship()
-		);
 		this.infections =  new DirectedAcyclicGraph<Person, Person.Infection>(
 				(Serializable & Supplier<Person>) () -> new Person(this),
 				(Serializable & Supplier<Person.Infection>) () -> new Person.Infection(this.getSimTime()),
@@ -103,30 +180,62 @@ public class Outbreak extends RSimulation<Outbreak,
 
 	@Override
 	public void setupStage2CreateAgents() {
-		WattsStrogatzGraphGenerator<Person, Person.Relationship> gen = 
-				new WattsStrogatzGraphGenerator<Person, Person.Relationship>(
-						this.getConfiguration().getPopulationSize(),
+		int size = this.getConfiguration().getPopulationSize();
+		SimpleWeightedGraph<Integer, DefaultWeightedEdge> graph = new SimpleWeightedGraph<>(
+				new ContactNetwork.Ids(),
+				(Serializable & Supplier<DefaultWeightedEdge>) () -> new DefaultWeightedEdge()
+		);
+		// The network is seeded from a seed derived from the simulation seed,
+		// rather than a draw from the simulation stream, so the other draws
+		// made during set up are unchanged.
+		WattsStrogatzGraphGenerator<Integer, DefaultWeightedEdge> gen = 
+				new WattsStrogatzGraphGenerator<Integer, DefaultWeightedEdge>(
+						size,
 						this.getConfiguration().getConnectedness(),
-						this.getConfiguration().getNetworkRandomness()
-				);
-		gen.generateGraph(contacts);
-		log.debug("contact graph {} edges, {} average degree ", 
-				contacts.iterables().edgeCount(),
-				StreamSupport.stream(
-							contacts.iterables().vertices().spliterator(),
-							true
-						).mapToInt(
-							c -> contacts.degreeOf(c)
-						).average().getAsDouble()
+						this.getConfiguration().getNetworkRandomness(),
+						SplitMix64.seedFrom(this.getSeed(), NETWORK)
 				);
-		contacts.edgeSet().forEach(r -> contacts.setEdgeWeight(r, 
+		gen.generateGraph(graph);
+		graph.edgeSet().forEach(r -> graph.setEdgeWeight(r, 
 				this.sampler().uniform()
 				));
+		// The network is held as arrays on the person id, and is shared by
+		// all the simulations bootstrapped from this configuration.
+		this.contacts = new ContactNetwork(graph, size);
+		for (int i=0; i<size; i++) new Person(this);
+		log.debug("contact graph {} edges, {} average degree ", 
+				contacts.edgeCount(),
+				((double) contacts.edgeCount()*2)/size
+				);
 	}
 	
 	public void setupStage4FinishConfiguration() {
 		super.setupStage4FinishConfiguration();
 		
+		if (this.getConfiguration().getEngine().equals(Engine.EVENT)) {
+			
+			// People are not stepped (see Person.remainsActive()) and instead 
+			// the events for each day are processed.
+			this.events = new OutbreakEvents(0);
+			this.getSchedule().scheduleOnce(events, 0);
+			
+		} else {
+			
+			// Decide whether people are being modelled individually and how 
+			// transmission is calculated this step. This runs after the agent 
+			// status has been snapshotted but before any agents are stepped.
+			this.getSchedule().scheduleOnce(
+					new RSteppable.UntilComplete<Outbreak>(-1) {
+						@Override
+						public void doStep(Outbreak s) {
+							s.updateHybrid();
+							if (!s.isAggregated()) s.prepareTransmission();
+						}
+					}, -1
+			);
+			
+		}
+		
 		this.getSchedule().scheduleOnce(
 				new RSteppable.UntilComplete<Outbreak>(10000) {
 					@Override
@@ -150,16 +259,153 @@ public class Outbreak extends RSimulation<Outbreak,
 	
 	
 
+	@Override
+	public void setupStage5StartParameterisation() {
+		super.setupStage5StartParameterisation();
+		this.kernel = new OutbreakKernel(this.getParameterisation());
+		// Everyone starts susceptible (see Configuration.statusFrom)
+		this.infected = new BitSet(this.getConfiguration().getPopulationSize());
+		this.states.reset();
+		this.states.add(State.SUSCEPTIBLE, this.getConfiguration().getPopulationSize());
+	}
+	
 	@Override
 	public void setupStage7FinishParameterisation() {
 		super.setupStage7FinishParameterisation();
 		
+		Sampler rng = this.commonSampler(IMPORTED_INFECTIONS);
 		for (int i=0; i<this.getConfiguration().getImportedInfectionCount(); i++) {
-			int id = (int) (this.sampler().uniform()*this.getConfiguration().getPopulationSize());
-			this.getAgentById(id).getStatus().setState(State.INFECTED);
+			int id = (int) (rng.uniform()*this.getConfiguration().getPopulationSize());
+			if (!this.getAgentById(id).getStatus().getState().equals(State.SUSCEPTIBLE)) continue;
+			this.getAgentById(id).changeState(State.INFECTED);
 			this.getAgentById(id).getStatus().setLastInfected(0);
+			this.recordInfection(null, this.getAgentById(id), 0);
 		}
 	}
+	
+	/**
+	 * Called by a person when their state changes to keep the infection 
+	 * frontier and state counts up to date. This may be called concurrently 
+	 * by agents being stepped in parallel.
+	 */
+	protected void stateChanged(Person person, State from, State to) {
+		states.transition(from, to);
+		synchronized(this) {
+			if (to == State.INFECTED) infected.set(person.getId());
+			else infected.clear(person.getId());
+		}
+	}
+	
+	/**
+	 * Chooses between push and pull transmission for this step, and for 
+	 * push transmission, finds all the infected contacts of susceptible 
+	 * people from the infected. This uses the same contact rules as 
+	 * Person.getContacts() for the susceptible person. 
+	 */
+	protected void prepareTransmission() {
+		if (exposures == null) exposures = new HashMap<>();
+		exposures.clear();
+		switch (this.getConfiguration().getTransmissionMode()) {
+			case PUSH: pushTransmission = true; break;
+			case PULL: pushTransmission = false; break;
+			default: pushTransmission = states.count(State.INFECTED) < states.count(State.SUSCEPTIBLE) * PUSH_PULL_RATIO;
+		}
+		if (!pushTransmission) return;
+		int connectedness = this.getConfiguration().getConnectedness();
+		for (int id = infected.nextSetBit(0); id >= 0; id = infected.nextSetBit(id+1)) {
+			Person infector = this.getAgentById(id);
+			for (int e = contacts.start(id); e < contacts.end(id); e++) {
+				Person contact = this.getAgentById(contacts.target(e));
+				if (!contact.getStatus().getState().equals(State.SUSCEPTIBLE)) continue;
+				if (contact.getContactRate()/connectedness > contacts.weight(e)) {
+					exposures.computeIfAbsent(contact.getId(), i -> new ArrayList<>()).add(infector);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * The number of people in a state, from the state counts or the
+	 * compartments if aggregated.
+	 */
+	protected long stateCount(State state) {
+		if (isAggregated()) switch (state) {
+			case SUSCEPTIBLE: return aggregate.getSusceptible();
+			case INFECTED: return aggregate.getInfected(this, this.getSimTime());
+			default: return aggregate.getRecovered(this, this.getSimTime());
+		}
+		return states.count(state);
+	}
+	
+	/**
+	 * Lookup tables for the current parameterisation. These are rebuilt if 
+	 * the parameterisation's delay distributions are replaced.
+	 */
+	public OutbreakKernel getKernel() {
+		OutbreakKernel tmp = kernel;
+		if (tmp == null || !tmp.isFor(this.getParameterisation())) {
+			tmp = new OutbreakKernel(this.getParameterisation());
+			kernel = tmp;
+		}
+		return tmp;
+	}
+	
+	/**
+	 * Whether the configuration uses the event driven engine rather than 
+	 * stepping every person (see OutbreakEvents).
+	 */
+	public boolean isEventDriven() {
+		return events != null;
+	}
+	
+	/**
+	 * Switches between modelling people individually and as compartments,
+	 * depending on the number infected, if the configuration uses the 
+	 * hybrid mode, and updates the compartments if aggregated.
+	 */
+	protected void updateHybrid() {
+		int upper = this.getConfiguration().getHybridUpperThreshold();
+		if (upper <= 0) return;
+		if (!isAggregated()) {
+			if (infected.cardinality() < upper) return;
+			this.aggregate = new OutbreakAggregate(this);
+			log.debug("Simulation {} aggregated at step {}", getUrn(), getSimTime());
+		} else if (aggregate.getInfected(this, this.getSimTime()-1) < this.getConfiguration().getHybridLowerThreshold()) {
+			aggregate.disaggregate(this);
+			this.aggregate = null;
+			log.debug("Simulation {} disaggregated at step {}", getUrn(), getSimTime());
+			return;
+		}
+		aggregate.step(this);
+	}
+	
+	/**
+	 * Whether the hybrid mode is currently using compartments rather than 
+	 * people (see OutbreakAggregate).
+	 */
+	public boolean isAggregated() {
+		return aggregate != null;
+	}
+	
+	protected OutbreakEvents getEvents() {
+		return events;
+	}
+	
+	protected OutbreakAggregate getAggregate() {
+		return aggregate;
+	}
+	
+	public boolean isPushTransmission() {
+		return pushTransmission;
+	}
+	
+	/**
+	 * The infected contacts of a susceptible person this step, when 
+	 * transmission is being pushed, in order of id.
+	 */
+	public List<Person> getExposures(Person person) {
+		return exposures.getOrDefault(person.getId(), Collections.emptyList());
+	}
 
 	public Optional<Long> getSusceptibleCount() {
 		return this.getLastNamedObservation(State.SUSCEPTIBLE.name(), Long.class);
@@ -169,7 +415,7 @@ public class Outbreak extends RSimulation<Outbreak,
 		return this.getLastNamedObservation(State.INFECTED.name(), Long.class);
 	}
 
-	protected SimpleWeightedGraph<Person, Person.Relationship> getContactNetwork() {
+	protected ContactNetwork getContactNetwork() {
 		return contacts;
 	}
 	
@@ -180,46 +426,124 @@ public class Outbreak extends RSimulation<Outbreak,
 	// This is a forward looking R number.
 	// Can do effective if we look at the edges and get a unique number of
 	// incoming nodes.
-	public List<Double> getRTimeseries() {
+	/**
+	 * The case reproduction number by day of infection, i.e. the mean 
+	 * number of people infected by the people infected on each day. This is
+	 * kept up to date as infections are recorded rather than by searching the
+	 * infection network.
+	 */
+	public synchronized List<Double> getRTimeseries() {
 		int size = this.getSimTime().intValue()+1;
-		Binomial[] ts = new Binomial[size];
-		for (int i=0;i<size;i++) ts[i] = new Binomial(0,0);
-		infections.vertexSet().forEach(v -> {
-			Optional<Long> tmp = v.getLastInfectedTime();
-			if (tmp.isPresent()) {
-				int infTime = tmp.get().intValue();
-				ts[infTime].update(infections.outDegreeOf(v), 1);
-			}
-		});
-		return Stream.of(ts).map(p -> p.probability()).collect(Collectors.toList());
+		List<Double> out = new ArrayList<>(size);
+		for (int i=0; i<size; i++) {
+			out.add(i < infectionsByDay.length ? 
+					Binomial.of((int) secondaryByDay[i], (int) infectionsByDay[i]).probability() : 
+					0D);
+		}
+		return out;
+	}
+	
+	/**
+	 * Record a new infection on a day, and who caused it, if known. This 
+	 * adds it to the infection network and the case reproduction counts, and
+	 * may be called concurrently by agents being stepped in parallel.
+	 */
+	protected synchronized void recordInfection(Person infector, Person infectee, long day) {
+		if (day >= infectionsByDay.length) {
+			int size = (int) Math.max(day+1, infectionsByDay.length*2);
+			infectionsByDay = Arrays.copyOf(infectionsByDay, size);
+			secondaryByDay = Arrays.copyOf(secondaryByDay, size);
+		}
+		infectionsByDay[(int) day] += 1;
+		infections.addVertex(infectee);
+		if (infector != null) {
+			infectorDay(infector).ifPresent(d -> secondaryByDay[d.intValue()] += 1);
+			infections.addVertex(infector);
+			infections.addEdge(infector, infectee, new Person.Infection(day));
+		}
+	}
+	
+	private Optional<Long> infectorDay(Person infector) {
+		long tmp = infector.getStatus().getLastInfected();
+		if (tmp == Configuration.NA_LONG || tmp < 0 || tmp >= infectionsByDay.length) return Optional.empty();
+		return Optional.of(tmp);
+	}
+	
+	/**
+	 * The agent status columns, if the configuration uses them.
+	 */
+	public Optional<Configuration.AgentStatus.Columns> getStatusColumns() {
+		return Optional.ofNullable(statusColumns);
+	}
+	
+	/**
+	 * Equivalent to counting Person.infectedToday() over all agents, by 
+	 * scanning the status columns. 
+	 */
+	private long incidenceFromColumns() {
+		long time = this.getSimTime();
+		RColumnStore.EnumColumn<State> state = statusColumns.getState();
+		RColumnStore.LongColumn lastInfected = statusColumns.getLastInfected();
+		long count = 0;
+		for (int i=0; i<state.size(); i++) {
+			if (state.getValue(i) != State.INFECTED) continue;
+			long tmp = lastInfected.getOld(i);
+			if (tmp == Configuration.NA_LONG || tmp == time) count++;
+		}
+		return count;
 	}
 	
+	/**
+	 * The ratio of people infected today to the infectiousness of the people
+	 * infected before today. This is found once per step, see RT_ESTIMATE for
+	 * a smoothed estimate.
+	 */
 	public double getRtEffective() {
+		return this.cached("rtEffective", Double.class, s -> Optional.of(s.rtEffective())).get();
+	}
+	
+	private double rtEffective() {
+		if (isEventDriven()) return rtEffectiveFromFrontier();
+		if (isAggregated()) return aggregate.getRtEffective(this, this.getSimTime());
 		// infected today
-		long numerator = this.streamAgents()
-			.filter(a -> a.infectedToday())
-			.count();
+		long numerator = this.getReduced(incidence);
 		// people with capability to infect today. (n.b. those infected today will
 		// have zero capability)
-		double denominator = this.streamAgents()
-			.filter(a -> a.getStatus().getState().equals(State.INFECTED))
-			.mapToDouble(x -> x.infectiousness())
-			.sum();
+		double denominator = this.getReduced(infectiousness);
+		return ((double) numerator)/denominator;
+	}
+	
+	/**
+	 * As getRtEffective() but only looking at people who are infected, for
+	 * the event driven engine where people are not stepped and so have no
+	 * old status. 
+	 */
+	private double rtEffectiveFromFrontier() {
+		long time = this.getSimTime();
+		DelayDistribution profile = this.getParameterisation().getInfectivityProfile();
+		long numerator = events.getIncidence(time);
+		double denominator = 0;
+		for (int id = infected.nextSetBit(0); id >= 0; id = infected.nextSetBit(id+1)) {
+			denominator += profile.density((int) (time - this.getAgentById(id).getStatus().getLastInfected()));
+		}
 		return ((double) numerator)/denominator;
 	}
 	
 	public Binomial testPositivity() {
-		Binomial positivity = this.cached("positivity", Binomial.class, s ->
-			s.streamAgents()
-			.flatMap(a -> a.resultToday().stream())
-			.map(r -> r.resultOnDay(s.getSimTime()).equals(Result.POSITIVE) ? Binomial.of(1, 1) : Binomial.of(0, 1))
-			.reduce(Binomial::combine)
-		)
-		.orElse(Binomial.of(0, 0));
-		return positivity;
+		// Nobody is tested in the event driven engine.
+		if (isEventDriven()) return Binomial.of(0, 0);
+		return this.getReduced(positivity);
 	}
 	
 	public double contactRates() {
+		// In the event driven engine contact rates do not change
+		if (isEventDriven()) return this.memoised("contactRates", Double.class,
+				s -> Optional.of(s.meanContactRate())
+			).orElse(0D);
+		return this.getReduced(contactRate);
+	}
+	
+	private double meanContactRate() {
 		return this.streamAgents()
 			.mapToInt(a -> a.getContacts().size())
 			.average().orElse(0);
@@ -233,6 +557,9 @@ public class Outbreak extends RSimulation<Outbreak,
 	
 	public void updateParameterisation() {
 		
+		// Nobody is tested while aggregated, so the lockdown state is kept
+		if (isAggregated()) return;
+		
 		Binomial positivity = this.testPositivity();
 		int high = this.getParameterisation().getHighCasesLockdownInitiatedTrigger();
 		int low = this.getParameterisation().getLowCasesLockdownReleaseTrigger();
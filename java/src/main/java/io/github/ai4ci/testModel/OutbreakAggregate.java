@@ -0,0 +1,189 @@
+package io.github.ai4ci.testModel;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+import io.github.ai4ci.stats.DelayDistribution;
+import io.github.ai4ci.testModel.Configuration.AgentStatus.State;
+
+/**
+ * The compartmental half of the hybrid execution mode (see
+ * `OutbreakConfig.hybridUpperThreshold`). While there are a lot of people
+ * infected the outbreak is held as the number susceptible and the number
+ * of new infections per day, and people are not stepped. Each day the number
+ * of new infections is binomial, with the probability of infection of a
+ * susceptible person given by a renewal equation on the infectivity profile:
+ *
+ * p = transmissionRate * sum_k incidence(t-k) * infectivityProfile.density(k) / N
+ *
+ * The transmission rate is estimated from the last week of the individual
+ * model before switching, so the effect of the network and of any controls
+ * in place at the time is carried over, but is then fixed until switching
+ * back.
+ *
+ * When switching back the people infected while aggregated are chosen from
+ * the susceptible contacts of those already infected, where possible, so
+ * the outbreak remains spatially clustered on the contact network.
+ */
+public class OutbreakAggregate implements Serializable {
+
+	// The number of days of the individual model used to estimate the
+	// transmission rate
+	static final int CALIBRATION_DAYS = 7;
+
+	private int population;
+	private long start;
+	private long susceptible;
+	private long[] incidence;
+	private double transmissionRate;
+
+	/**
+	 * Aggregate the current state of the simulation, at the start of a step.
+	 */
+	OutbreakAggregate(Outbreak simulation) {
+		this.population = simulation.getConfiguration().getPopulationSize();
+		this.start = simulation.getSimTime();
+		this.incidence = new long[(int) start+1];
+		simulation.streamAgents()
+			.map(p -> p.getStatus())
+			.filter(s -> s.getLastInfected() != Configuration.NA_LONG)
+			.forEach(s -> incidence[(int) s.getLastInfected()] += 1);
+		this.susceptible = simulation.streamAgents()
+				.filter(p -> p.getStatus().getState().equals(State.SUSCEPTIBLE))
+				.count();
+		DelayDistribution profile = simulation.getParameterisation().getInfectivityProfile();
+		// Cumulative incidence to the end of each day gives the number
+		// susceptible at the start of the next.
+		long[] cumulative = new long[(int) start+1];
+		for (int d=0; d<start; d++) cumulative[d+1] = cumulative[d] + incidence[d];
+		double infections = 0;
+		double exposure = 0;
+		for (long d=Math.max(1, start-CALIBRATION_DAYS); d<start; d++) {
+			infections += incidence[(int) d];
+			exposure += infectiousness(profile, d, 1) * (population - cumulative[(int) d]) / population;
+		}
+		this.transmissionRate = exposure > 0 ? infections / exposure : 0;
+	}
+
+	/**
+	 * Update the number of people infected on the current day.
+	 */
+	void step(Outbreak simulation) {
+		long day = simulation.getSimTime();
+		if (day >= incidence.length) incidence = Arrays.copyOf(incidence, (int) Math.max(day+1, incidence.length*2));
+		DelayDistribution profile = simulation.getParameterisation().getInfectivityProfile();
+		double p = Math.min(1, transmissionRate * infectiousness(profile, day, 1) / population);
+		long infected = simulation.sampler().binom((int) susceptible, p);
+		incidence[(int) day] = infected;
+		susceptible -= infected;
+	}
+
+	/**
+	 * The total infectiousness on a day of those infected at least `from`
+	 * days before.
+	 */
+	private double infectiousness(DelayDistribution profile, long day, int from) {
+		double out = 0;
+		for (int k=from; k<profile.size(); k++) {
+			out += getIncidence(day-k) * profile.density(k);
+		}
+		return out;
+	}
+
+	public long getIncidence(long day) {
+		if (day < 0 || day >= incidence.length) return 0;
+		return incidence[(int) day];
+	}
+
+	public long getSusceptible() {
+		return susceptible;
+	}
+
+	/**
+	 * The number of people infected at the end of a day.
+	 */
+	public long getInfected(Outbreak simulation, long day) {
+		long size = simulation.getParameterisation().getInfectivityProfile().size();
+		long out = 0;
+		for (long d = Math.max(0, day-size+1); d<=day; d++) out += getIncidence(d);
+		return out;
+	}
+
+	public long getRecovered(Outbreak simulation, long day) {
+		return population - susceptible - getInfected(simulation, day);
+	}
+
+	/**
+	 * As Outbreak.getRtEffective(), for a day.
+	 */
+	public double getRtEffective(Outbreak simulation, long day) {
+		DelayDistribution profile = simulation.getParameterisation().getInfectivityProfile();
+		return ((double) getIncidence(day)) / infectiousness(profile, day, 0);
+	}
+
+	public double getTransmissionRate() {
+		return transmissionRate;
+	}
+
+	/**
+	 * Update the people in the simulation to match the compartments at the
+	 * end of the previous day. This is called at the start of a step, after
+	 * everyone's status has been copied, so the old status is updated too.
+	 */
+	void disaggregate(Outbreak simulation) {
+		long day = simulation.getSimTime();
+		ContactNetwork network = simulation.getContactNetwork();
+
+		// Susceptible contacts of people who have been infected
+		List<Person> candidates = new ArrayList<>();
+		BitSet seen = new BitSet(population);
+		simulation.streamAgents()
+			.filter(p -> !p.getStatus().getState().equals(State.SUSCEPTIBLE))
+			.forEach(p -> addContacts(simulation, network, p, candidates, seen));
+
+		for (long d = start; d < day; d++) {
+			for (long i = 0; i < getIncidence(d); i++) {
+				Person next = null;
+				while (next == null && !candidates.isEmpty()) {
+					int index = (int) (simulation.sampler().uniform() * candidates.size());
+					Person tmp = candidates.get(index);
+					candidates.set(index, candidates.get(candidates.size()-1));
+					candidates.remove(candidates.size()-1);
+					if (tmp.getStatus().getState().equals(State.SUSCEPTIBLE)) next = tmp;
+				}
+				while (next == null) {
+					Person tmp = simulation.getAgentById((int) (simulation.sampler().uniform() * population));
+					if (tmp.getStatus().getState().equals(State.SUSCEPTIBLE)) next = tmp;
+				}
+				next.changeState(State.INFECTED);
+				next.getStatus().setLastInfected(d);
+				// who infected them is not known
+				simulation.recordInfection(null, next, d);
+				addContacts(simulation, network, next, candidates, seen);
+			}
+		}
+
+		// Anyone who would have recovered by the end of yesterday
+		OutbreakKernel kernel = simulation.getKernel();
+		simulation.streamAgents()
+			.filter(p -> p.getStatus().getState().equals(State.INFECTED))
+			.filter(p -> kernel.isRecovered(day - 1 - p.getStatus().getLastInfected()))
+			.forEach(p -> p.changeState(State.RECOVERED));
+
+		simulation.getColumnStore().ifPresent(c -> c.snapshot());
+		simulation.streamAgents().forEach(p -> p.copyStatus());
+	}
+
+	private void addContacts(Outbreak simulation, ContactNetwork network, Person person, List<Person> candidates, BitSet seen) {
+		for (int e = network.start(person.getId()); e < network.end(person.getId()); e++) {
+			Person contact = simulation.getAgentById(network.target(e));
+			if (seen.get(contact.getId())) continue;
+			if (!contact.getStatus().getState().equals(State.SUSCEPTIBLE)) continue;
+			seen.set(contact.getId());
+			candidates.add(contact);
+		}
+	}
+}
@@ -0,0 +1,114 @@
+package io.github.ai4ci.testModel;
+
+import java.util.Arrays;
+
+
+import io.github.ai4ci.REventEngine;
+import io.github.ai4ci.stats.DelayDistribution;
+import io.github.ai4ci.testModel.Configuration.AgentStatus.State;
+
+/**
+ * The event driven engine for the Outbreak model (see
+ * `OutbreakConfig.engine`). When someone is infected the day on which they
+ * transmit to each of their susceptible contacts (if at all) and the day
+ * on which they recover are sampled up front and queued as events.
+ *
+ * This follows the same rules as the step based Person.updateStatus():
+ * a person infected on day t transmits to a contact on day t+k (k>0) with
+ * probability infectivityProfile.density(k) times the contact's probability
+ * of infection given an infectious contact, the contacts are those given
+ * by the contact's contact rate, and they recover on the day their
+ * infectivity profile ends. Testing and behaviour change are not modelled,
+ * so contact rates stay at their baseline.
+ */
+public class OutbreakEvents extends REventEngine<Outbreak> {
+
+	private boolean started = false;
+	private long[] incidence = new long[0];
+
+	public OutbreakEvents(int priority) {
+		super(priority);
+	}
+
+	@Override
+	public void doStep(Outbreak simulation) {
+		if (!started) {
+			// Infections imported during parameterisation. These are sampled
+			// here rather than at import so that they are different for each
+			// execution bootstrap.
+			started = true;
+			simulation.streamAgents()
+				.filter(p -> p.getStatus().getState().equals(State.INFECTED))
+				.forEach(p -> infected(simulation, p, p.getStatus().getLastInfected()));
+		}
+		super.doStep(simulation);
+	}
+
+	/**
+	 * The number of people infected on a given day
+	 */
+	public long getIncidence(long day) {
+		if (day < 0 || day >= incidence.length) return 0;
+		return incidence[(int) day];
+	}
+
+	private void infected(Outbreak simulation, Person person, long day) {
+		if (day >= incidence.length) incidence = Arrays.copyOf(incidence, (int) Math.max(day+1, incidence.length*2));
+		incidence[(int) day] += 1;
+
+		DelayDistribution profile = simulation.getParameterisation().getInfectivityProfile();
+		int duration = (int) profile.size();
+		ContactNetwork network = simulation.getContactNetwork();
+		int connectedness = simulation.getConfiguration().getConnectedness();
+
+		for (int e = network.start(person.getId()); e < network.end(person.getId()); e++) {
+			Person contact = simulation.getAgentById(network.target(e));
+			if (!contact.getStatus().getState().equals(State.SUSCEPTIBLE)) continue;
+			if (!(contact.getContactRate()/connectedness > network.weight(e))) continue;
+			double p = contact.getStatus().getProbabilityInfectionGivenInfectiousContact();
+			for (int k = 1; k < duration; k++) {
+				if (simulation.sampler().uniform() < profile.density(k)*p) {
+					// within the day the order of transmissions is random
+					schedule(day + k + simulation.sampler().uniform(), new Transmission(person, contact));
+					break;
+				}
+			}
+		}
+		schedule(day + duration, new Recovery(person));
+	}
+
+	static class Transmission extends REventEngine.Event<Outbreak> {
+
+		Person from;
+		Person to;
+
+		Transmission(Person from, Person to) {
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		public void fire(Outbreak simulation) {
+			if (!to.getStatus().getState().equals(State.SUSCEPTIBLE)) return;
+			long day = (long) Math.floor(getTime());
+			to.changeState(State.INFECTED);
+			to.getStatus().setLastInfected(day);
+			simulation.recordInfection(from, to, day);
+			simulation.getEvents().infected(simulation, to, day);
+		}
+	}
+
+	static class Recovery extends REventEngine.Event<Outbreak> {
+
+		Person person;
+
+		Recovery(Person person) {
+			this.person = person;
+		}
+
+		@Override
+		public void fire(Outbreak simulation) {
+			person.changeState(State.RECOVERED);
+		}
+	}
+}
@@ -0,0 +1,82 @@
+package io.github.ai4ci.testModel;
+
+import java.io.Serializable;
+
+import io.github.ai4ci.stats.DelayDistribution;
+
+/**
+ * Lookup tables, by days since infection, for the parts of a
+ * parameterisation that people use every day. These are built once for a
+ * parameterisation (see Outbreak.getKernel()) so that people only do array
+ * lookups rather than recalculating them from the delay distributions.
+ */
+public class OutbreakKernel implements Serializable {
+
+	private DelayDistribution infectivityProfile;
+	private DelayDistribution testTakenProbabilityProfile;
+	private double[] infectiousness;
+	private double[] cumInfectiousness;
+	private double[] testHazard;
+	private int duration;
+
+	OutbreakKernel(Configuration.OutbreakParameters parameters) {
+		this.infectivityProfile = parameters.getInfectivityProfile();
+		this.testTakenProbabilityProfile = parameters.getTestTakenProbabilityProfile();
+		this.duration = (int) infectivityProfile.size();
+		this.infectiousness = new double[duration];
+		this.cumInfectiousness = new double[duration+1];
+		for (int i=0; i<duration; i++) {
+			infectiousness[i] = infectivityProfile.density(i);
+			cumInfectiousness[i] = infectivityProfile.affected(i);
+		}
+		cumInfectiousness[duration] = infectivityProfile.affected(duration);
+		this.testHazard = new double[(int) testTakenProbabilityProfile.size()];
+		for (int i=0; i<testHazard.length; i++) {
+			testHazard[i] = testTakenProbabilityProfile.hazard(i);
+		}
+	}
+
+	/**
+	 * Whether this was built from the current delay distributions of a
+	 * parameterisation.
+	 */
+	boolean isFor(Configuration.OutbreakParameters parameters) {
+		return parameters.getInfectivityProfile() == infectivityProfile &&
+				parameters.getTestTakenProbabilityProfile() == testTakenProbabilityProfile;
+	}
+
+	/**
+	 * As infectivityProfile.density(days)
+	 */
+	public double infectiousness(long days) {
+		if (days < 0 || days >= duration) return 0;
+		return infectiousness[(int) days];
+	}
+
+	/**
+	 * As infectivityProfile.affected(days)
+	 */
+	public double cumInfectiousness(long days) {
+		if (days <= 0) return 0;
+		return cumInfectiousness[(int) Math.min(days, duration)];
+	}
+
+	/**
+	 * As OutbreakParameters.getTestTakenProbability()
+	 */
+	public double testTakenProbability(long days, double baseTestTakenProbability) {
+		double tmp = days < 0 || days >= testHazard.length ? 0 : testHazard[(int) days];
+		return 1-(1-tmp)*(1-baseTestTakenProbability);
+	}
+
+	/**
+	 * As OutbreakParameters.isRecovered()
+	 */
+	public boolean isRecovered(long days) {
+		return days >= duration;
+	}
+
+	public int getDuration() {
+		return duration;
+	}
+}
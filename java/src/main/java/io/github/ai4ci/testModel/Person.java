@@ -1,22 +1,21 @@
 package io.github.ai4ci.testModel;
 
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Optional;
-import java.util.Set;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
-import java.util.stream.StreamSupport;
 
-import org.jgrapht.Graphs;
-import org.jgrapht.graph.DefaultWeightedEdge;
-import org.jgrapht.graph.DirectedAcyclicGraph;
-import org.jgrapht.graph.SimpleWeightedGraph;
 
 import io.github.ai4ci.RAgent;
+import io.github.ai4ci.RAgentSchema;
 import io.github.ai4ci.stats.Binomial;
-import io.github.ai4ci.stats.DelayDistribution;
+import io.github.ai4ci.stats.Sampler;
 import io.github.ai4ci.testModel.Configuration.AgentStatus.State;
+import io.github.ai4ci.testModel.Configuration.OutbreakConfig.Engine;
 import io.github.ai4ci.testModel.Configuration.OutbreakParameters.Control;
 import io.github.ai4ci.testModel.TestResult.Result;
 
@@ -24,6 +23,22 @@ public class Person extends RAgent<Person,Outbreak,Configuration.AgentBaseline,C
 
 	public enum Observers {  TESTS, DETECTED_CONTACTS };
 
+	// Cache slots
+	static final RAgentSchema SCHEMA = RAgentSchema.of(Person.class);
+	static final RAgentSchema.Slot TEST_TODAY = SCHEMA.cacheSlot("testToday");
+	static final RAgentSchema.Slot RESULTS = SCHEMA.cacheSlot("results");
+	static final RAgentSchema.Slot CONTACT_PREVALENCE = SCHEMA.cacheSlot("contactPrevalence");
+	static final RAgentSchema.Slot FORCE_OF_INFECTION = SCHEMA.cacheSlot("forceOfInfection");
+	static final RAgentSchema.Memo<Person> CONTACTS = SCHEMA.memoSlot("contacts", 
+			p -> RAgentSchema.key(p.getContactRate()));
+	static final RAgentSchema.Slot DETECTED_CONTACTS = SCHEMA.cacheSlot("detectedContacts");
+	
+	// Purposes of the random draws which are common between 
+	// parameterisations (see RSimulation.setCommonRandomNumbers)
+	static final long TRANSMISSION = 1;
+	static final long TESTING = 2;
+	static final long CONTACT_TRACING = 3;
+
 	public Person(Outbreak simulation) {
 		super(simulation);
 	}
@@ -35,6 +50,9 @@ public class Person extends RAgent<Person,Outbreak,Configuration.AgentBaseline,C
 		
 		this.setBaseline(Configuration.baselineFrom(configuration, this.sampler())); 
 		
+		// People are not stepped in the event driven engine and are not tested
+		if (configuration.getEngine().equals(Engine.EVENT)) return;
+		
 		keepHistory(
 			Observers.TESTS, 
 			TestResult.class,
@@ -58,22 +76,33 @@ public class Person extends RAgent<Person,Outbreak,Configuration.AgentBaseline,C
 	@Override
 	public boolean remainsActive() {
 		// return this.getLastInfectedTime().orElse(Long.MAX_VALUE) + this.infectionDuration() > this.getSimTime();
-		return !this.getSimulation().isComplete();
+		return !this.getSimulation().isEventDriven() && !this.getSimulation().isComplete();
 		// this.getOldStatus().map(o -> !o.getState().equals(State.RECOVERED)).orElse(Boolean.TRUE);
 	}
 
 	@Override
 	public Person self() {return this;}
+	
+	@Override
+	public void doStep(Outbreak simulation) {
+		// People are not updated while the simulation is aggregated (see
+		// OutbreakAggregate)
+		if (simulation.isAggregated()) return;
+		super.doStep(simulation);
+	}
 
 	@Override
 	public void setupStage6InitialiseAgentStatus() {
+		Configuration.AgentStatus tmp = Configuration.statusFrom(
+				this.getSimulation().getConfiguration(), 
+				this.getSimulation().getParameterisation(), 
+				this.getBaseline(), 
+				this.sampler()
+		);
 		this.setStatus(
-				Configuration.statusFrom(
-						this.getSimulation().getConfiguration(), 
-						this.getSimulation().getParameterisation(), 
-						this.getBaseline(), 
-						this.sampler()
-				)
+				this.getSimulation().getStatusColumns()
+					.<Configuration.AgentStatus>map(c -> c.initialise(this.getId(), this.getBaseline(), tmp))
+					.orElse(tmp)
 		);
 	}
 
@@ -88,8 +117,10 @@ public class Person extends RAgent<Person,Outbreak,Configuration.AgentBaseline,C
 //	}
 	
 	public Optional<TestResult> testToday() {
-		return this.cached("testToday", TestResult.class, 
+		if (this.getSimulation().isAggregated()) return Optional.empty();
+		return this.cached(TEST_TODAY, TestResult.class, 
 			a -> {
+				Sampler rng = this.commonSampler(TESTING);
 				double pTmp;
 				// TODO: this logic for deciding if a person is tested needs
 				// revision. This depends on all sorts of factors, and parameters
@@ -105,23 +136,23 @@ public class Person extends RAgent<Person,Outbreak,Configuration.AgentBaseline,C
 					// This depends on a probability distribution of days since last infection and
 					// a baseline probability
 					// Combined probability of screening test or reactive test.
-					pTmp = this.getSimulation().getParameterisation().getTestTakenProbability( 
-							this.getDaysSinceLastInfection(),
+					pTmp = this.getSimulation().getKernel().testTakenProbability( 
+							this.getDaysSinceLastInfection().orElse(-1L),
 							this.getStatus().getBaseProbabilityOfTesting()
 					);
 				}
 				
-				if (this.sampler().uniform() > pTmp) { 
+				if (rng.uniform() > pTmp) { 
 					return Optional.empty();
 				} else { 
 					return Optional.of(new TestResult(
 						this.infectiousness() > 0, // true test status as test is testing infectiousness 
 						this.getSimTime().longValue(), // test date
-						(long) Math.floor(this.sampler().logNormal(
+						(long) Math.floor(rng.logNormal(
 							this.getSimulation().getParameterisation().getMeanTestDelay(),
 							this.getSimulation().getParameterisation().getSdTestDelay()
 						)), // per test test delay
-						this.sampler(), // rng
+						rng, // rng
 						this.getSimulation().getParameterisation().getTestSensitivity(),
 						this.getSimulation().getParameterisation().getTestSpecificity()
 					));
@@ -134,7 +165,7 @@ public class Person extends RAgent<Person,Outbreak,Configuration.AgentBaseline,C
 	// test repository / factory.
 	public List<TestResult> resultToday() {
 		return 
-				this.cachedList("results", TestResult.class, 
+				this.cachedList(RESULTS, TestResult.class, 
 						a -> a.getNamedObservation(Observers.TESTS, TestResult.class)
 							.stream()
 							.flatMap(t -> t.publishedResult(this.getSimTime()).stream())
@@ -151,33 +182,42 @@ public class Person extends RAgent<Person,Outbreak,Configuration.AgentBaseline,C
 			 * is less than their probability of infection given a specific
 			 * day post infection.. 
 			 * 
+			 * The state of contacts is taken from the start of the step, as 
+			 * they may be being updated concurrently. 
+			 * 
+			 * Infected contacts are either found here (pull) or have been found
+			 * from the infected people before the step (push), which are in 
+			 * order of id. Both are taken in order of id, and only those who 
+			 * are infectious today get a draw, so that which people are 
+			 * infected, and by whom, does not depend on the mode, even without
+			 * common random numbers. 
 			 */
-			Set<Person> infectors = this.getContacts().stream()
-					.filter(a -> a.getStatus().getState().equals(State.INFECTED))
-					.filter(a -> this.sampler().uniform() < a.infectiousness()*this.getStatus().getProbabilityInfectionGivenInfectiousContact() )
-					.collect(Collectors.toSet());
+			Stream<Person> infectedContacts = this.getSimulation().isPushTransmission() ?
+					this.getSimulation().getExposures(this).stream() :
+					this.getContacts().stream()
+						.filter(a -> a.getOldStatus().map(s -> s.getState().equals(State.INFECTED)).orElse(Boolean.FALSE))
+						.sorted(Comparator.comparingInt(a -> a.getId()));
+			List<Person> infectors = infectedContacts
+					.filter(a -> a.infectiousness() > 0)
+					.filter(a -> this.commonUniform(TRANSMISSION, a.getId()) < a.infectiousness()*this.getStatus().getProbabilityInfectionGivenInfectiousContact() )
+					.collect(Collectors.toList());
 			
 				// Locally acquired infections
 			if (infectors.size() > 0) {
-				this.getStatus().setState(State.INFECTED);
+				this.changeState(State.INFECTED);
 				this.getStatus().setLastInfected(this.getSimTime());
 				// TODO: figure out how to decide which is the infector in a fairer
-				// way, or whether a multi infector model is possible.
-				infectors.stream().findFirst().ifPresent(i -> {
-					DirectedAcyclicGraph<Person, Infection> network = this.getSimulation()
-						.getInfectionNetwork();
-					synchronized(network) {
-						network.addVertex(i);
-						network.addVertex(this);
-						network.addEdge(i, this, new Infection(this.getSimTime()) );
-					}
-				});	
+				// way, or whether a multi infector model is possible. For now
+				// it is the one with the lowest id.
+				infectors.stream().findFirst().ifPresent(i -> 
+					this.getSimulation().recordInfection(i, this, this.getSimTime())
+				);	
 			}
 		
 		} else if (this.getStatus().getState().equals(State.INFECTED)) {
 			// Has the patient recovered and is no longer infectious?
-			if (this.getSimulation().getParameterisation().isRecovered(this.getDaysSinceLastInfection().orElse(0L))) {
-				this.getStatus().setState(State.RECOVERED);
+			if (this.getSimulation().getKernel().isRecovered(this.getDaysSinceLastInfection().orElse(0L))) {
+				this.changeState(State.RECOVERED);
 				
 			} 
 		}
@@ -191,6 +231,17 @@ public class Person extends RAgent<Person,Outbreak,Configuration.AgentBaseline,C
 		
 	}
 
+	/**
+	 * Change the state of this person, keeping the simulation's infection
+	 * frontier up to date.
+	 */
+	protected void changeState(State state) {
+		State from = this.getStatus().getState();
+		if (from.equals(state)) return;
+		this.getStatus().setState(state);
+		this.getSimulation().stateChanged(this, from, state);
+	}
+	
 	@Override
 	public void changeBehaviour() {
 		
@@ -297,7 +348,7 @@ public class Person extends RAgent<Person,Outbreak,Configuration.AgentBaseline,C
 	}
 	
 	public Binomial contactHistoryPositivity() {
-		return this.cached("contactPrevalence",Binomial.class, a -> {
+		return this.cached(CONTACT_PREVALENCE,Binomial.class, a -> {
 			Optional<Binomial> contactStatus = 
 					a.getNamedListObservation(Observers.DETECTED_CONTACTS, Person.Reference.class).stream()
 						.flatMap(st -> st.stream())
@@ -340,14 +391,10 @@ public class Person extends RAgent<Person,Outbreak,Configuration.AgentBaseline,C
 	 * @return
 	 */
 	public double infectiousness() {
-		return this.cached(
-				"infectiousness",
-				Double.class,
-				a -> {
-					DelayDistribution tmp = this.getSimulation().getParameterisation().getInfectivityProfile();
-					return a.getDaysSinceLastInfection()
-						.map(i -> tmp.density(i.intValue()));
-				}).orElse(0D);
+		OutbreakKernel kernel = this.getSimulation().getKernel();
+		return this.getDaysSinceLastInfection()
+				.map(i -> kernel.infectiousness(i))
+				.orElse(0D);
 	}
 
 	/**
@@ -367,19 +414,15 @@ public class Person extends RAgent<Person,Outbreak,Configuration.AgentBaseline,C
 //	}
 	
 	public double cumInfectiousness() {
-		return this.cached(
-				"cumInfectiousness",
-				Double.class,
-				a -> {
-					DelayDistribution tmp = this.getSimulation().getParameterisation().getInfectivityProfile();
-					return a.getDaysSinceLastInfection()
-						.map(i -> tmp.affected(i.intValue()));
-				}).orElse(0D);
+		OutbreakKernel kernel = this.getSimulation().getKernel();
+		return this.getDaysSinceLastInfection()
+				.map(i -> kernel.cumInfectiousness(i))
+				.orElse(0D);
 	}
 	
 	public double forceOfInfection() {
 		return this.cached(
-			"forceOfInfection", 
+			FORCE_OF_INFECTION, 
 			Double.class,
 			a -> a.getContacts().stream()
 				.map(c -> c.infectiousness()*this.getStatus().getProbabilityInfectionGivenInfectiousContact())
@@ -399,36 +442,32 @@ public class Person extends RAgent<Person,Outbreak,Configuration.AgentBaseline,C
 		
 		// Mobility adjusted contact network.
 		
-		return cachedList("contacts", Person.class, a -> {
-			SimpleWeightedGraph<Person, Relationship> network = a.getSimulation().getContactNetwork();
+		return memoisedList(CONTACTS, Person.class, a -> {
+			ContactNetwork network = a.getSimulation().getContactNetwork();
 			int connectedness = this.getSimulation().getConfiguration().getConnectedness();
-			return StreamSupport.stream(network.edgesOf(a).spliterator(),false)
-					// The network edge weight is the quantile of connection strength.
-					// the contact rate is a people per day number.
-				.filter(e -> a.getContactRate()/connectedness > e.getConnectednessQuantile())
-				.map(e -> Graphs.getOppositeVertex(network, e, a))
-				.collect(Collectors.toList());
+			List<Person> out = new ArrayList<>();
+			for (int e = network.start(a.getId()); e < network.end(a.getId()); e++) {
+				// The network edge weight is the quantile of connection strength.
+				// the contact rate is a people per day number.
+				if (a.getContactRate()/connectedness > network.weight(e)) {
+					out.add(a.getSimulation().getAgentById(network.target(e)));
+				}
+			}
+			return out;
 		});
 		
 	}
 	
 	public List<Person> getDetectedContacts() {
-		return cachedList("detectedContacts", Person.class, a -> { 
-			return a.getContacts().stream()
-				// Likelihood of a contact being detected is a function of the person contacted
-				.filter(contact -> a.sampler().uniform() < a.getSimulation().getParameterisation().getContactRecordedProbability())
-				.collect(Collectors.toList());
+		if (this.getSimulation().isAggregated()) return Collections.emptyList();
+		return cachedList(DETECTED_CONTACTS, Person.class, a -> { 
+			// Likelihood of a contact being detected is a function of the person contacted
+			return a.commonSampler(CONTACT_TRACING).thin(a.getContacts(), a.getSimulation().getParameterisation().getContactRecordedProbability());
 		});
 	}
 	
 	
 	
-	public static class Relationship extends DefaultWeightedEdge implements Serializable {
-		public double getConnectednessQuantile() {
-			return this.getWeight();
-		}
-	}
-	
 	public static class Infection implements Serializable {
 		
 		private Long infectionTime;
@@ -12,6 +12,7 @@ import org.apache.logging.log4j.core.config.DefaultConfiguration;
 
 import io.github.ai4ci.Bootstraps;
 import io.github.ai4ci.RObservedSimulation;
+import io.github.ai4ci.flow.RSimulationAggregator;
 import io.github.ai4ci.flow.RSimulationConsumer;
 import io.github.ai4ci.flow.RSimulationFactory;
 import io.github.ai4ci.stats.DelayDistribution;
@@ -83,9 +84,14 @@ public class Test {
 					Observations.INCIDENCE, Observations.CONTACT_RATES, Observations.TEST_POSITIVES, Observations.TESTS_PERFORMED, Observations.RT_EFFECTIVE,
 					State.SUSCEPTIBLE, State.INFECTED, State.RECOVERED
 				)
+				.withAggregator(
+					"summary.csv", 
+					new RSimulationAggregator<Outbreak>(Observations.INCIDENCE, Observations.RT_EFFECTIVE, State.INFECTED)
+				)
 				.start();
 		
 		while (!pool.idle()) Thread.sleep(10000);
+		pool.finish();
 		System.exit(0);
 		
 	}
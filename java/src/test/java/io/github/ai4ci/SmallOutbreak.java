@@ -0,0 +1,85 @@
+package io.github.ai4ci;
+
+import org.apache.commons.lang3.tuple.Pair;
+
+import io.github.ai4ci.flow.RSimulationFactory;
+import io.github.ai4ci.stats.DelayDistribution;
+import io.github.ai4ci.testModel.Configuration.OutbreakConfig;
+import io.github.ai4ci.testModel.Configuration.OutbreakParameters;
+import io.github.ai4ci.testModel.Outbreak;
+import io.github.ai4ci.testModel.Person;
+
+/**
+ * A small test model outbreak for tests that need a running simulation.
+ */
+public class SmallOutbreak {
+
+	public static String directory() {
+		return System.getProperty("java.io.tmpdir");
+	}
+
+	public static OutbreakConfig.OutbreakConfigBuilder config(int populationSize) {
+		return OutbreakConfig.builder()
+				.configurationName("test")
+				.populationSize(populationSize)
+				.connectedness(20)
+				.meanContactProbability(0.5)
+				.networkRandomness(0.25)
+				.R0(2.0)
+				.importedInfectionCount(10);
+	}
+
+	public static OutbreakParameters.OutbreakParametersBuilder parameters() {
+		return OutbreakParameters.builder()
+				.parameterisationName("test")
+				.contactRecordedProbability(0.5)
+				.infectivityProfile(DelayDistribution.fromCounts(1.0D, 0,0,1,2,2,1,1,1,1))
+				.meanTestDelay(7)
+				.sdTestDelay(1)
+				.testTakenProbabilityProfile(DelayDistribution.fromProbabilities(0D,0D,0D,0D,0.5D,0.5D,0.5D,0.5D,0.25D,0.25D))
+				.testSensitivity(0.8)
+				.testSpecificity(0.99)
+				.lockdownContactRate(3)
+				.highCasesLockdownInitiatedTrigger(20)
+				.lowCasesLockdownReleaseTrigger(2);
+	}
+
+	public static RSimulationFactory<Outbreak,OutbreakConfig,OutbreakParameters,Person> factory() {
+		return RSimulationFactory.ofType(Outbreak.class, directory(), false);
+	}
+
+	/**
+	 * A configured and parameterised simulation, ready to be bootstrapped.
+	 */
+	public static RObservedSimulation<Outbreak,Person> prototype(
+			RSimulationFactory<Outbreak,OutbreakConfig,OutbreakParameters,Person> factory,
+			OutbreakConfig config, OutbreakParameters parameters) {
+		RObservedSimulation<Outbreak,Person> tmp = RObservedSimulation.<Outbreak,Person>uninitialised(Outbreak.class).get();
+		tmp = factory.configure(tmp, Pair.of(0, config));
+		return factory.parameterise(tmp, Pair.of(0, parameters));
+	}
+
+	/**
+	 * Bootstrap a prototype and run it for a number of steps.
+	 */
+	public static RObservedSimulation<Outbreak,Person> run(
+			RSimulationFactory<Outbreak,OutbreakConfig,OutbreakParameters,Person> factory,
+			RObservedSimulation<Outbreak,Person> prototype, int bootstrapId, int steps) {
+		return run(factory.bootstrapExecutions(prototype, bootstrapId), steps);
+	}
+
+	/**
+	 * Run a bootstrapped simulation for a number of steps.
+	 */
+	public static RObservedSimulation<Outbreak,Person> run(RObservedSimulation<Outbreak,Person> tmp, int steps) {
+		RSimulationRunnable<Outbreak,Person> runnable = new RSimulationRunnable<>(tmp, directory());
+		runnable.setTarget(steps);
+		runnable.run();
+		return tmp;
+	}
+
+	public static RObservedSimulation<Outbreak,Person> run(OutbreakConfig config, OutbreakParameters parameters, int bootstrapId, int steps) {
+		RSimulationFactory<Outbreak,OutbreakConfig,OutbreakParameters,Person> factory = factory();
+		return run(factory, prototype(factory, config, parameters), bootstrapId, steps);
+	}
+}
@@ -0,0 +1,77 @@
+package io.github.ai4ci;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import io.github.ai4ci.flow.RAbcSmc;
+import io.github.ai4ci.flow.RSimulationFactory;
+import io.github.ai4ci.testModel.Configuration.OutbreakConfig;
+import io.github.ai4ci.testModel.Configuration.OutbreakParameters;
+import io.github.ai4ci.testModel.Outbreak;
+import io.github.ai4ci.testModel.Person;
+
+class TestAbcSmc {
+
+	static final int SIZE = 500;
+	static final int DAYS = 40;
+
+	static double[] incidence(double R0) {
+		RObservedSimulation<Outbreak,Person> sim = SmallOutbreak.run(
+				SmallOutbreak.config(SIZE).R0(R0).build(), SmallOutbreak.parameters().build(), 12345, DAYS);
+		List<Long> tmp = new ArrayList<>(sim.getSimulation().getNamedObservation(Outbreak.Observations.INCIDENCE, Long.class));
+		// observations are newest first
+		Collections.reverse(tmp);
+		return tmp.stream().mapToDouble(l -> l).toArray();
+	}
+
+	static List<RAbcSmc.Population> fit(double[] target, long seed, int generations) {
+		RSimulationFactory<Outbreak,OutbreakConfig,OutbreakParameters,Person> factory = SmallOutbreak.factory();
+		OutbreakParameters parameters = SmallOutbreak.parameters().build();
+		return new RAbcSmc<Outbreak,OutbreakConfig,OutbreakParameters,Person>(
+					factory,
+					RAbcSmc.uniform(new double[] {1.0}, new double[] {4.0}),
+					theta -> SmallOutbreak.config(SIZE).R0(theta[0]).build(),
+					theta -> parameters)
+				.withTarget(Outbreak.Observations.INCIDENCE, target)
+				.withParticles(8)
+				.withThreads(4)
+				.withSeed(seed)
+				.run(generations);
+	}
+
+	@Test
+	void testFitR0() {
+		double[] target = incidence(2.0);
+		assertEquals(DAYS, target.length);
+		List<RAbcSmc.Population> fitted = fit(target, 1L, 3);
+		assertEquals(3, fitted.size());
+		RAbcSmc.Population last = fitted.get(2);
+		assertEquals(8, last.getParticles().length);
+		// the tolerance shrinks and runs are rejected early
+		assertTrue(last.getTolerance() < fitted.get(1).getTolerance());
+		assertTrue(last.getAborted() > 0);
+		assertTrue(((double) last.getSteps())/last.getRuns() < DAYS);
+		// the posterior has moved from the prior mean of 2.5 towards 2.0
+		assertEquals(2.0, last.mean()[0], 0.5);
+	}
+
+	@Test
+	void testReproducible() {
+		double[] target = incidence(2.0);
+		List<RAbcSmc.Population> first = fit(target, 2L, 2);
+		List<RAbcSmc.Population> second = fit(target, 2L, 2);
+		for (int g = 0; g < first.size(); g++) {
+			assertArrayEquals(first.get(g).getDistances(), second.get(g).getDistances());
+			assertArrayEquals(first.get(g).getWeights(), second.get(g).getWeights());
+			for (int i = 0; i < first.get(g).getParticles().length; i++) {
+				assertArrayEquals(first.get(g).getParticles()[i], second.get(g).getParticles()[i]);
+			}
+			assertEquals(first.get(g).getRuns(), second.get(g).getRuns());
+		}
+	}
+}
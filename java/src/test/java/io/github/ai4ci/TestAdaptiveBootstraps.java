@@ -0,0 +1,74 @@
+package io.github.ai4ci;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+import org.junit.jupiter.api.Test;
+
+import io.github.ai4ci.flow.RAdaptiveBootstraps;
+import io.github.ai4ci.flow.RSimulationFactory;
+import io.github.ai4ci.testModel.Configuration.OutbreakConfig;
+import io.github.ai4ci.testModel.Configuration.OutbreakParameters;
+import io.github.ai4ci.testModel.Outbreak;
+import io.github.ai4ci.testModel.Person;
+
+class TestAdaptiveBootstraps {
+
+	// met once a number of simulations have finished
+	static RAdaptiveBootstraps.Target<Outbreak,Integer> finished(int count) {
+		return new RAdaptiveBootstraps.Target<Outbreak,Integer>() {
+			public Integer add(Integer state, Outbreak simulation) {
+				return state == null ? 1 : state+1;
+			}
+			public boolean isMet(Integer state) {
+				return state != null && state >= count;
+			}
+			public String describe(Integer state) {
+				return "finished "+state;
+			}
+		};
+	}
+
+	// runs the bootstraps one at a time, in the order they are started
+	static int started(RAdaptiveBootstraps<Outbreak,Person> adaptive) {
+		RSimulationFactory<Outbreak,OutbreakConfig,OutbreakParameters,Person> factory = SmallOutbreak.factory();
+		RObservedSimulation<Outbreak,Person> prototype = SmallOutbreak.prototype(factory,
+				SmallOutbreak.config(200).build(), SmallOutbreak.parameters().build());
+		Deque<RObservedSimulation<Outbreak,Person>> queue = new ArrayDeque<>();
+		for (int i: adaptive.initial()) queue.add(adaptive.bootstrap(prototype, i));
+		while (!queue.isEmpty()) {
+			RObservedSimulation<Outbreak,Person> next = SmallOutbreak.run(queue.poll(), 5);
+			adaptive.completed(next.getSimulation()).ifPresent(s -> queue.add(s.get()));
+		}
+		return adaptive.getStarted().get(prototype.getSimulation().getParameterisedUrn());
+	}
+
+	@Test
+	void testStopsWhenMet() {
+		RSimulationFactory<Outbreak,OutbreakConfig,OutbreakParameters,Person> factory = SmallOutbreak.factory();
+		RAdaptiveBootstraps<Outbreak,Person> adaptive = new RAdaptiveBootstraps<Outbreak,Person>(2, 20, factory::bootstrapExecutions)
+				.withTarget(finished(5));
+		// none are started once 5 have finished, but the one still running
+		// when the target was met is not wasted
+		assertEquals(6, started(adaptive));
+	}
+
+	@Test
+	void testStopsAtMaximum() {
+		RSimulationFactory<Outbreak,OutbreakConfig,OutbreakParameters,Person> factory = SmallOutbreak.factory();
+		RAdaptiveBootstraps<Outbreak,Person> adaptive = new RAdaptiveBootstraps<Outbreak,Person>(2, 7, factory::bootstrapExecutions)
+				.withTarget(finished(5))
+				.withTarget(finished(100));
+		assertEquals(7, started(adaptive));
+	}
+
+	@Test
+	void testMinimum() {
+		RSimulationFactory<Outbreak,OutbreakConfig,OutbreakParameters,Person> factory = SmallOutbreak.factory();
+		RAdaptiveBootstraps<Outbreak,Person> adaptive = new RAdaptiveBootstraps<Outbreak,Person>(4, 20, factory::bootstrapExecutions)
+				.withTarget(finished(1));
+		assertEquals(4, started(adaptive));
+	}
+}
@@ -0,0 +1,45 @@
+package io.github.ai4ci;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
+
+import org.junit.jupiter.api.Test;
+
+class TestAgentSchema {
+
+	static class Holder {
+		double rate;
+		List<Integer> parameter;
+	}
+
+	@Test
+	void testMemoDependencies() {
+		RAgentSchema schema = RAgentSchema.of(Holder.class);
+		RAgentSchema.Memo<Holder> memo = schema.memoSlot("test",
+				Collections.<ToLongFunction<Holder>>singletonList(h -> RAgentSchema.key(h.rate)),
+				Collections.<Function<Holder,?>>singletonList(h -> h.parameter));
+		Holder h = new Holder();
+		h.rate = 1.0;
+		h.parameter = Arrays.asList(1, 2);
+		long[] keys = memo.keys(h);
+		Object[] instances = memo.instances(h);
+		assertTrue(memo.matches(h, keys, instances));
+		h.rate = 2.0;
+		assertFalse(memo.matches(h, keys, instances));
+		h.rate = 1.0;
+		// an equal but different instance is a change
+		h.parameter = Arrays.asList(1, 2);
+		assertFalse(memo.matches(h, keys, instances));
+		// the slot is only defined once
+		assertSame(memo, schema.memoSlot("test", (Holder x) -> 0L));
+		assertThrows(RuntimeException.class, () -> {
+			schema.cacheSlot("plain");
+			schema.memoSlot("plain", (Holder x) -> 0L);
+		});
+	}
+}
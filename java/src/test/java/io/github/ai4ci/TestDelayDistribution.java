@@ -0,0 +1,33 @@
+package io.github.ai4ci;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+
+import io.github.ai4ci.stats.DelayDistribution;
+import io.github.ai4ci.stats.Sampler;
+
+class TestDelayDistribution {
+
+	@Test
+	void testSample() {
+		DelayDistribution dd = DelayDistribution.fromProbabilities(0.1, 0.2, 0.4, 0.2, 0.1, 0);
+		Sampler sampler = Sampler.withSeed(1L);
+		int[] counts = new int[6];
+		for (int i=0; i<100000; i++) counts[dd.sample(sampler)]++;
+		for (int i=0; i<6; i++) assertEquals(dd.density(i), counts[i]/100000.0, 0.01);
+		assertEquals(0, counts[5]);
+	}
+
+	@Test
+	void testAffected() {
+		DelayDistribution dd = DelayDistribution.fromCounts(0.5, 1, 2, 3, 2, 1);
+		for (int i=0; i<8; i++) {
+			double out = 1;
+			for (int j=0; j<Math.min(i, dd.size()); j++) out *= 1-dd.density(j)/0.5;
+			assertEquals((1-out)*0.5, dd.affected(i), 1e-12);
+		}
+		assertEquals(0, dd.affected(-1));
+	}
+
+}
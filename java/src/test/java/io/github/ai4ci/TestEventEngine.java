@@ -0,0 +1,45 @@
+package io.github.ai4ci;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.apache.commons.math3.stat.descriptive.SummaryStatistics;
+import org.junit.jupiter.api.Test;
+
+import io.github.ai4ci.flow.RSimulationFactory;
+import io.github.ai4ci.testModel.Configuration.AgentStatus.State;
+import io.github.ai4ci.testModel.Configuration.OutbreakConfig;
+import io.github.ai4ci.testModel.Configuration.OutbreakConfig.Engine;
+import io.github.ai4ci.testModel.Configuration.OutbreakParameters;
+import io.github.ai4ci.testModel.Outbreak;
+import io.github.ai4ci.testModel.Person;
+
+class TestEventEngine {
+
+	static final int SIZE = 500;
+	static final int RUNS = 40;
+
+	// the final size of each of a number of bootstraps of a small outbreak
+	static SummaryStatistics finalSizes(Engine engine) {
+		RSimulationFactory<Outbreak,OutbreakConfig,OutbreakParameters,Person> factory = SmallOutbreak.factory();
+		RObservedSimulation<Outbreak,Person> prototype = SmallOutbreak.prototype(factory,
+				SmallOutbreak.config(SIZE).engine(engine).build(), SmallOutbreak.parameters().build());
+		SummaryStatistics out = new SummaryStatistics();
+		for (int i = 0; i < RUNS; i++) {
+			Outbreak outbreak = SmallOutbreak.run(factory, prototype, i, 100).getSimulation();
+			out.addValue(SIZE - outbreak.getLastNamedObservation(State.SUSCEPTIBLE, Long.class).get());
+		}
+		return out;
+	}
+
+	@Test
+	void testSameFinalSize() {
+		SummaryStatistics stepped = finalSizes(Engine.STEP);
+		SummaryStatistics events = finalSizes(Engine.EVENT);
+		// the means are within 3 standard errors of each other
+		double se = Math.sqrt(stepped.getVariance()/RUNS + events.getVariance()/RUNS);
+		assertEquals(stepped.getMean(), events.getMean(), 3*se);
+		assertEquals(1.0, events.getStandardDeviation()/stepped.getStandardDeviation(), 0.5);
+		// and the outbreaks took off
+		assertTrue(stepped.getMean() > SIZE/2);
+	}
+}
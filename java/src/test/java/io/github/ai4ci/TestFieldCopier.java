@@ -0,0 +1,74 @@
+package io.github.ai4ci;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import io.github.ai4ci.stats.DelayDistribution;
+
+class TestFieldCopier {
+
+	static enum Flag {ON, OFF}
+
+	static class Simple implements Serializable {
+		int count;
+		Double rate;
+		String name;
+		Flag flag;
+		long[] history;
+		DelayDistribution delay;
+	}
+
+	static class Nested implements Serializable {
+		int count;
+		List<String> items = new ArrayList<>();
+	}
+
+	static class Objects implements Serializable {
+		String[] names;
+	}
+
+	@Test
+	void testSupported() {
+		assertTrue(RFieldCopier.of(Simple.class).supports());
+		assertFalse(RFieldCopier.of(Nested.class).supports());
+		assertFalse(RFieldCopier.of(Objects.class).supports());
+	}
+
+	@Test
+	void testCopy() {
+		Simple from = new Simple();
+		from.count = 3; from.rate = 0.5; from.name = "a"; from.flag = Flag.ON;
+		from.history = new long[] {1,2,3};
+		from.delay = new DelayDistribution(new double[] {0.5,0.5});
+		Simple to = new Simple();
+		to.history = new long[3];
+		long[] target = to.history;
+		assertSame(to, RFieldCopier.snapshot(from, to));
+		assertEquals(3, to.count);
+		assertEquals(0.5, to.rate);
+		assertEquals(Flag.ON, to.flag);
+		assertSame(from.delay, to.delay);
+		// primitive arrays are copied into the target
+		assertSame(target, to.history);
+		from.history[0] = 10;
+		assertEquals(1, to.history[0]);
+	}
+
+	@Test
+	void testFallback() {
+		Nested from = new Nested();
+		from.items.add("a");
+		Nested to = new Nested();
+		Nested snapshot = RFieldCopier.snapshot(from, to);
+		// mutable fields are not shared so a clone is made
+		assertNotSame(to, snapshot);
+		assertNotSame(from.items, snapshot.items);
+		from.items.add("b");
+		assertEquals(List.of("a"), snapshot.items);
+	}
+}
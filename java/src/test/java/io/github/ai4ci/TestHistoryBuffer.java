@@ -0,0 +1,53 @@
+package io.github.ai4ci;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.commons.lang3.SerializationUtils;
+import org.junit.jupiter.api.Test;
+
+class TestHistoryBuffer {
+
+	@Test
+	void testBounded() {
+		RHistoryBuffer<Long> buffer = RHistoryBuffer.of(Long.class, 4);
+		assertTrue(buffer instanceof RHistoryBuffer.OfLong);
+		for (long i = 0; i < 10; i++) buffer.push(i);
+		assertEquals(Arrays.asList(9L, 8L, 7L, 6L), buffer);
+		assertEquals(17L, ((RHistoryBuffer.OfLong) buffer).sum(2));
+		assertThrows(IndexOutOfBoundsException.class, () -> buffer.get(4));
+	}
+
+	@Test
+	void testUnbounded() {
+		RHistoryBuffer<Double> buffer = RHistoryBuffer.of(Double.class, null);
+		for (int i = 0; i < 100; i++) buffer.push((double) i);
+		assertEquals(100, buffer.size());
+		assertEquals(99.0, ((RHistoryBuffer.OfDouble) buffer).getDouble(0));
+		assertEquals(0.0, buffer.get(99));
+		// grows past its maximum of 20 from a smaller initial capacity
+		RHistoryBuffer<String> strings = RHistoryBuffer.of(String.class, 20);
+		for (int i = 0; i < 25; i++) strings.push("s"+i);
+		assertEquals(20, strings.size());
+		assertEquals("s24", strings.get(0));
+		assertEquals("s5", strings.get(19));
+	}
+
+	@Test
+	void testFlattenAndClone() {
+		RHistoryBuffer<List<? extends Integer>> buffer = new RHistoryBuffer.OfObject<>(2);
+		buffer.push(Arrays.asList(1, 2));
+		buffer.push(Arrays.asList(3));
+		buffer.push(Arrays.asList(4, 5));
+		List<Integer> snapshot = RHistoryBuffer.flatten(buffer);
+		assertEquals(Arrays.asList(4, 5, 3), snapshot);
+		RHistoryBuffer<List<? extends Integer>> copy = SerializationUtils.clone(buffer);
+		copy.push(Arrays.asList(6));
+		assertEquals(Arrays.asList(6, 4, 5), RHistoryBuffer.flatten(copy));
+		assertEquals(Arrays.asList(4, 5, 3), RHistoryBuffer.flatten(buffer));
+		buffer.push(Arrays.asList(7));
+		assertEquals(Arrays.asList(4, 5, 3), snapshot);
+	}
+}
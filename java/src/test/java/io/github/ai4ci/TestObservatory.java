@@ -0,0 +1,67 @@
+package io.github.ai4ci;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.Test;
+
+import io.github.ai4ci.flow.RSimulationFactory;
+import io.github.ai4ci.testModel.Configuration.OutbreakConfig;
+import io.github.ai4ci.testModel.Configuration.OutbreakParameters;
+import io.github.ai4ci.testModel.Outbreak;
+import io.github.ai4ci.testModel.Person;
+
+class TestObservatory {
+
+	static enum Observed {TIME, ID}
+
+	@Test
+	void testUpdatedOncePerStep() {
+		RSimulationFactory<Outbreak,OutbreakConfig,OutbreakParameters,Person> factory = SmallOutbreak.factory();
+		RObservedSimulation<Outbreak,Person> sim = factory.bootstrapExecutions(
+				SmallOutbreak.prototype(factory, SmallOutbreak.config(200).build(), SmallOutbreak.parameters().build()), 0);
+		sim.getObservatory().get().observeSimulation(
+				RObserver.<Outbreak,Long>simulationHistory(Observed.TIME, Long.class, s -> Optional.of(s.getSimTime()), null));
+		SmallOutbreak.run(sim, 5);
+		assertEquals(Arrays.asList(4L, 3L, 2L, 1L, 0L),
+				sim.getObservatory().get().observationsByNameAndType(Observed.TIME, Long.class).collect(Collectors.toList()));
+	}
+
+	@Test
+	void testLookup() {
+		RSimulationFactory<Outbreak,OutbreakConfig,OutbreakParameters,Person> factory = SmallOutbreak.factory();
+		RObservedSimulation<Outbreak,Person> sim = factory.bootstrapExecutions(
+				SmallOutbreak.prototype(factory, SmallOutbreak.config(200).build(), SmallOutbreak.parameters().build()), 0);
+		RObservatory<Outbreak,Person> observatory = sim.getObservatory().get();
+		// two observers of the simulation with the same name are both kept
+		observatory.observeSimulation(
+				RObserver.<Outbreak,Long>simulationHistory(Observed.TIME, Long.class, s -> Optional.of(s.getSimTime()), null));
+		observatory.observeSimulation(
+				RObserver.<Outbreak,Long>simulationHistory(Observed.TIME, Long.class, s -> Optional.of(s.getSimTime()*10), null));
+		Person agent = sim.getSimulation().streamAgents().filter(a -> a.getId() == 3).findFirst().get();
+		RAgentObserver<Person,String> observer = RObserver.agentHistory(Person.class, Observed.ID, String.class, a -> Optional.of("agent"+a.getId()), null);
+		observatory.observeAgent(agent, observer);
+		// registering the same observer again does nothing
+		observatory.observeAgent(agent, observer);
+		SmallOutbreak.run(sim, 3);
+
+		assertEquals(Arrays.asList(2L, 1L, 0L, 20L, 10L, 0L),
+				observatory.observationsByNameAndType(Observed.TIME, Long.class).collect(Collectors.toList()));
+		assertEquals(0, observatory.observationsByNameAndType(Observed.TIME, Integer.class).count());
+		assertEquals(Arrays.asList("agent3", "agent3", "agent3"),
+				observatory.observationsByType(String.class).collect(Collectors.toList()));
+
+		// by subject, where the last observer registered with a name is used
+		Map<String,List<?>> times = observatory.observationsByName(Observed.TIME.name());
+		assertEquals(1, times.size());
+		assertEquals(Arrays.asList(20L, 10L, 0L), times.get(sim.getSimulation().getUrn()));
+		Map<String,List<?>> ids = observatory.observationsByName(Observed.ID.name());
+		assertEquals(1, ids.size());
+		assertEquals(Arrays.asList("agent3", "agent3", "agent3"), ids.get(agent.getUrn()));
+	}
+}
@@ -0,0 +1,40 @@
+package io.github.ai4ci;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+
+import io.github.ai4ci.flow.RSimulationFactory;
+import io.github.ai4ci.testModel.Configuration.AgentStatus.State;
+import io.github.ai4ci.testModel.Configuration.OutbreakConfig;
+import io.github.ai4ci.testModel.Configuration.OutbreakParameters;
+import io.github.ai4ci.testModel.Outbreak;
+import io.github.ai4ci.testModel.Person;
+
+class TestParallelStepping {
+
+	static Outbreak run(int threads) {
+		RSimulationFactory<Outbreak,OutbreakConfig,OutbreakParameters,Person> factory = SmallOutbreak.factory()
+				.withParallelStepping(threads);
+		return SmallOutbreak.run(factory,
+				SmallOutbreak.prototype(factory, SmallOutbreak.config(2000).build(), SmallOutbreak.parameters().build()),
+				0, 40).getSimulation();
+	}
+
+	@Test
+	void testSameResultsWithAnyThreads() {
+		Outbreak one = run(1);
+		Outbreak four = run(4);
+		assertEquals(
+				one.getNamedObservation(Outbreak.Observations.INCIDENCE, Long.class),
+				four.getNamedObservation(Outbreak.Observations.INCIDENCE, Long.class));
+		assertEquals(
+				one.getNamedObservation(State.SUSCEPTIBLE, Long.class),
+				four.getNamedObservation(State.SUSCEPTIBLE, Long.class));
+		assertEquals(
+				one.getNamedObservation(Outbreak.Observations.TEST_POSITIVES, Integer.class),
+				four.getNamedObservation(Outbreak.Observations.TEST_POSITIVES, Integer.class));
+		// and the outbreak took off, so this is not trivially true
+		assertTrue(one.getLastNamedObservation(State.SUSCEPTIBLE, Long.class).get() < 1900);
+	}
+}
@@ -0,0 +1,107 @@
+package io.github.ai4ci;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVPrinter;
+import org.junit.jupiter.api.Test;
+
+import io.github.ai4ci.flow.RSimulationFactory;
+import io.github.ai4ci.testModel.Configuration.AgentStatus.State;
+import io.github.ai4ci.testModel.Configuration.OutbreakConfig;
+import io.github.ai4ci.testModel.Configuration.OutbreakParameters;
+import io.github.ai4ci.testModel.Outbreak;
+import io.github.ai4ci.testModel.Person;
+
+class TestPopulationObserver {
+
+	static enum Observed {VALUE}
+
+	static final int SIZE = 200;
+	static final int STEPS = 10;
+
+	// the simulation with an observer of the id and time of a cohort of people
+	static RObservedSimulation<Outbreak,Person> observed(Integer cohortSize) {
+		RSimulationFactory<Outbreak,OutbreakConfig,OutbreakParameters,Person> factory = SmallOutbreak.factory();
+		RObservedSimulation<Outbreak,Person> sim = factory.bootstrapExecutions(
+				SmallOutbreak.prototype(factory, SmallOutbreak.config(SIZE).build(), SmallOutbreak.parameters().build()), 0);
+		// fewer expected steps than are run, so the matrix grows
+		sim.getObservatory().get().observeSimulation(RObserver.<Outbreak,Person>populationHistory(
+				Person.class, Observed.VALUE, p -> p.getId()*1000 + p.getSimTime(), cohortSize, 4));
+		return SmallOutbreak.run(sim, STEPS);
+	}
+
+	// the observer is copied when it is registered
+	@SuppressWarnings("unchecked")
+	static RPopulationObserver<Outbreak,Person> observer(RObservedSimulation<Outbreak,Person> sim) {
+		return (RPopulationObserver<Outbreak,Person>) sim.getObservatory().get()
+				.byName.get(Observed.VALUE.name()).get(RObservatory.SIMULATION).get(0);
+	}
+
+	@Test
+	void testFullPopulation() {
+		RPopulationObserver<Outbreak,Person> observer = observer(observed(null));
+		assertEquals(STEPS, observer.getSteps());
+		int[] ids = observer.getAgentIds();
+		assertEquals(SIZE, ids.length);
+		for (int step = 0; step < STEPS; step++) {
+			assertEquals(step, observer.getTime(step));
+			for (int i = 0; i < ids.length; i++) {
+				assertEquals(ids[i]*1000 + step, observer.getValue(i, step));
+			}
+		}
+		// newest step first, in cohort order within a step
+		List<Double> observation = observer.getObservation();
+		assertEquals(SIZE*STEPS, observation.size());
+		assertEquals(ids[0]*1000 + STEPS-1, observation.get(0));
+		assertEquals(ids[1]*1000 + STEPS-1, observation.get(1));
+		assertEquals(ids[0]*1000 + STEPS-2, observation.get(SIZE));
+		assertEquals(ids[SIZE-1]*1000 + 0D, observation.get(SIZE*STEPS-1));
+		assertThrows(IndexOutOfBoundsException.class, () -> observer.getValue(0, STEPS));
+	}
+
+	@Test
+	void testCohort() {
+		RObservedSimulation<Outbreak,Person> sim = observed(20);
+		RPopulationObserver<Outbreak,Person> observer = observer(sim);
+		int[] ids = observer.getAgentIds();
+		assertEquals(20, ids.length);
+		assertEquals(20*STEPS, observer.getObservation().size());
+		// distinct agents in id order
+		for (int i = 1; i < ids.length; i++) assertTrue(ids[i] > ids[i-1]);
+		assertTrue(ids[0] >= 0 && ids[ids.length-1] < SIZE);
+		// the same for the same seed
+		assertArrayEquals(ids, observer(observed(20)).getAgentIds());
+		// and the simulation is the same as one that is not observed
+		Outbreak unobserved = SmallOutbreak.run(
+				SmallOutbreak.config(SIZE).build(), SmallOutbreak.parameters().build(), 0, STEPS).getSimulation();
+		assertEquals(
+				unobserved.getNamedObservation(Outbreak.Observations.INCIDENCE, Long.class),
+				sim.getSimulation().getNamedObservation(Outbreak.Observations.INCIDENCE, Long.class));
+		assertEquals(
+				unobserved.getNamedObservation(State.SUSCEPTIBLE, Long.class),
+				sim.getSimulation().getNamedObservation(State.SUSCEPTIBLE, Long.class));
+	}
+
+	@Test
+	void testCsv() throws IOException {
+		RObservedSimulation<Outbreak,Person> sim = observed(3);
+		RPopulationObserver<Outbreak,Person> observer = observer(sim);
+		int[] ids = observer.getAgentIds();
+		StringBuilder out = new StringBuilder();
+		try (CSVPrinter printer = new CSVPrinter(out, CSVFormat.DEFAULT.withRecordSeparator("\n"))) {
+			observer.appendCsv(printer);
+		}
+		List<String> lines = Arrays.asList(out.toString().split("\n"));
+		// one row per agent and step, oldest first
+		assertEquals(3*STEPS, lines.size());
+		String urn = sim.getSimulation().getUrn();
+		assertEquals(urn+","+ids[0]+",0,"+(ids[0]*1000.0), lines.get(0));
+		assertEquals(urn+","+ids[2]+",0,"+(ids[2]*1000.0), lines.get(2));
+		assertEquals(urn+","+ids[1]+","+(STEPS-1)+","+(ids[1]*1000.0+STEPS-1), lines.get(3*STEPS-2));
+	}
+}
@@ -0,0 +1,68 @@
+package io.github.ai4ci;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.Test;
+
+import io.github.ai4ci.flow.RSimulationFactory;
+import io.github.ai4ci.testModel.Configuration.AgentStatus.State;
+import io.github.ai4ci.testModel.Configuration.OutbreakConfig;
+import io.github.ai4ci.testModel.Configuration.OutbreakParameters;
+import io.github.ai4ci.testModel.Outbreak;
+import io.github.ai4ci.testModel.Person;
+
+class TestReducer {
+
+	static enum Reduced {STATES, IDS, INFECTIOUSNESS, MATCHES}
+
+	static boolean matchesScan(Outbreak outbreak,
+			RReducer<Person,Map<State,Long>> states, RReducer<Person,List<Integer>> ids, RReducer<Person,Double> infectiousness) {
+		List<Person> agents = outbreak.streamAgents().collect(Collectors.toList());
+		Map<State,Long> scannedStates = new HashMap<>();
+		List<Integer> scannedIds = new ArrayList<>();
+		double scannedInfectiousness = 0;
+		for (Person a: agents) {
+			scannedStates.merge(a.getStatus().getState(), 1L, Long::sum);
+			scannedIds.add(a.getId());
+			scannedInfectiousness += a.infectiousness();
+		}
+		double contactRate = agents.stream().mapToInt(a -> a.getContacts().size()).average().orElse(0);
+		return scannedStates.equals(outbreak.getReduced(states))
+				// blocks are combined in the order of the agents
+				&& scannedIds.equals(outbreak.getReduced(ids))
+				&& Math.abs(scannedInfectiousness - outbreak.getReduced(infectiousness)) < 1E-9
+				// and a reducer registered by the model
+				&& Math.abs(contactRate - outbreak.contactRates()) < 1E-9;
+	}
+
+	@Test
+	void testMatchesScan() {
+		RSimulationFactory<Outbreak,OutbreakConfig,OutbreakParameters,Person> factory = SmallOutbreak.factory()
+				.withParallelStepping(4);
+		// more than one block of agents, reduced on more than one thread
+		RObservedSimulation<Outbreak,Person> sim = factory.bootstrapExecutions(
+				SmallOutbreak.prototype(factory, SmallOutbreak.config(10000).build(), SmallOutbreak.parameters().build()), 0);
+		Outbreak outbreak = sim.getSimulation();
+		RReducer<Person,Map<State,Long>> states = outbreak.registerReducer(Reduced.STATES, () ->
+				Collectors.groupingBy(a -> a.getStatus().getState(), Collectors.counting()));
+		RReducer<Person,List<Integer>> ids = outbreak.registerReducer(Reduced.IDS, () ->
+				Collectors.mapping(a -> a.getId(), Collectors.toList()));
+		RReducer<Person,Double> infectiousness = outbreak.registerReducer(Reduced.INFECTIOUSNESS, () ->
+				Collectors.summingDouble(a -> a.infectiousness()));
+		// compared as the observatory is updated, at the end of each step
+		sim.getObservatory().get().observeSimulation(RObserver.<Outbreak,Boolean>simulationHistory(
+				Reduced.MATCHES, Boolean.class, s -> Optional.of(matchesScan(s, states, ids, infectiousness)), null));
+		SmallOutbreak.run(sim, 10);
+		List<Boolean> matches = sim.getObservatory().get()
+				.observationsByNameAndType(Reduced.MATCHES, Boolean.class).collect(Collectors.toList());
+		assertEquals(10, matches.size());
+		assertFalse(matches.contains(false));
+	}
+}
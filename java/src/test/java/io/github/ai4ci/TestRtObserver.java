@@ -0,0 +1,48 @@
+package io.github.ai4ci;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.apache.commons.statistics.distribution.GammaDistribution;
+import org.junit.jupiter.api.Test;
+
+import io.github.ai4ci.stats.DelayDistribution;
+import io.github.ai4ci.testModel.Outbreak;
+
+class TestRtObserver {
+
+	static enum Observed {RT}
+
+	static final long[] INCIDENCE = {10, 20, 30, 40, 50};
+	static int day = 0;
+
+	@Test
+	void testCoriPosterior() {
+		Outbreak subject = SmallOutbreak.prototype(SmallOutbreak.factory(),
+				SmallOutbreak.config(100).build(), SmallOutbreak.parameters().build()).getSimulation();
+		day = 0;
+		// the density on day 0 is not part of the serial interval
+		RRtObserver<Outbreak> observer = new RRtObserver<Outbreak>(Observed.RT,
+				s -> INCIDENCE[day++],
+				s -> DelayDistribution.fromProbabilities(0.1, 0.3, 0.4, 0.2),
+				3, 1, 5, 0.95, null);
+		for (int i = 0; i < INCIDENCE.length; i++) observer.update(subject);
+
+		// weights on days 1 to 3 are 0.3, 0.4 and 0.2 over 0.9, so the
+		// infectiousness of the last 3 days is
+		// 20/3 + 10*4/9 = 11.111
+		// 30/3 + 20*4/9 + 10*2/9 = 21.111
+		// 40/3 + 30*4/9 + 20*2/9 = 31.111
+		// and the posterior has shape 1 + 120 and rate 1/5 + 63.333
+		double shape = 121;
+		double rate = 0.2 + 190.0/3;
+		RRtObserver.Estimate estimate = observer.getLastObservation().get();
+		assertEquals(50, estimate.getIncidence());
+		assertEquals(280.0/9, estimate.getInfectiousness(), 1E-9);
+		assertEquals(shape/rate, estimate.getMean(), 1E-9);
+		GammaDistribution posterior = GammaDistribution.of(shape, 1/rate);
+		assertEquals(posterior.inverseCumulativeProbability(0.025), estimate.getLower(), 1E-9);
+		assertEquals(posterior.inverseCumulativeProbability(0.975), estimate.getUpper(), 1E-9);
+		// nothing was infectious on the first day
+		assertTrue(Double.isNaN(observer.getObservation().get(4).getMean()));
+	}
+}
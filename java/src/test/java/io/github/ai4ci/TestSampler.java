@@ -0,0 +1,70 @@
+package io.github.ai4ci;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.Random;
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.Test;
+
+import io.github.ai4ci.stats.GaussianRandomProvider;
+import io.github.ai4ci.stats.Sampler;
+import io.github.ai4ci.stats.SplitMix64;
+
+class TestSampler {
+
+	@Test
+	void testJump() {
+		SplitMix64 a = new SplitMix64(123L);
+		SplitMix64 b = new SplitMix64(123L);
+		for (int i=0; i<1000; i++) a.nextLong();
+		b.jump(1000);
+		assertEquals(a.nextLong(), b.nextLong());
+	}
+
+	// a generator that is neither SplitMix64 nor MTWrapper
+	static class Other implements GaussianRandomProvider {
+		Random random;
+		Other(long seed) {random = new Random(seed);}
+		public long nextLong() {return random.nextLong();}
+		public double nextGaussian() {return random.nextGaussian();}
+	}
+
+	@Test
+	void testOtherProviders() {
+		Sampler a = new Sampler(new Other(123L));
+		Sampler b = new Sampler(new Other(123L));
+		for (int i=0; i<100; i++) a.uniform();
+		b.jump(100);
+		assertEquals(a.uniform(), b.uniform());
+		a.setSeed(5L);
+		assertEquals(Sampler.withSeed(5L).uniform(), a.uniform());
+	}
+
+	@Test
+	void testBernoulliSubset() {
+		Sampler sampler = Sampler.withSeed(1L);
+		int[] subset = sampler.bernoulliSubset(100000, 0.05);
+		assertEquals(5000, subset.length, 300);
+		for (int i=1; i<subset.length; i++) assertTrue(subset[i] > subset[i-1]);
+		assertEquals(0, sampler.bernoulliSubset(100, 0).length);
+		assertEquals(100, sampler.bernoulliSubset(100, 1).length);
+		int[] counts = sampler.binoms(new int[] {1000, 1000, 10}, 0.9);
+		assertEquals(900, counts[0], 50);
+		assertTrue(counts[2] <= 10);
+	}
+
+	@Test
+	void testSubstreamsDoNotDependOnOrder() {
+		double[] sequential = IntStream.range(0, 1000)
+				.mapToDouble(i -> Sampler.substream(42L, i, 7).uniform())
+				.toArray();
+		double[] parallel = IntStream.range(0, 1000).parallel()
+				.mapToDouble(i -> Sampler.substream(42L, i, 7).uniform())
+				.toArray();
+		assertArrayEquals(sequential, parallel);
+		assertNotEquals(sequential[0], sequential[1]);
+		assertNotEquals(Sampler.substream(42L, 0, 7).uniform(), Sampler.substream(42L, 0, 8).uniform());
+	}
+
+}
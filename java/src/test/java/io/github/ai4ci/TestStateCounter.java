@@ -0,0 +1,42 @@
+package io.github.ai4ci;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.Test;
+
+import io.github.ai4ci.testModel.Configuration.AgentStatus.State;
+
+class TestStateCounter {
+
+	@Test
+	void testTransitions() {
+		RStateCounter<State> counter = new RStateCounter<>(State.class);
+		counter.add(State.SUSCEPTIBLE, 100000);
+		IntStream.range(0, 1000).parallel().forEach(i -> {
+			counter.transition(State.SUSCEPTIBLE, State.INFECTED);
+			if (i % 2 == 0) counter.transition(State.INFECTED, State.RECOVERED);
+		});
+		assertEquals(99000, counter.count(State.SUSCEPTIBLE));
+		assertEquals(500, counter.count(State.INFECTED));
+		assertEquals(500, counter.count(State.RECOVERED));
+		assertEquals(100000, counter.total());
+	}
+
+	@Test
+	void testScheduled() {
+		RStateCounter<State> counter = new RStateCounter<>(State.class);
+		counter.add(State.INFECTED, 10);
+		counter.transitionAt(5, State.INFECTED, State.RECOVERED);
+		counter.transitionAt(7, State.INFECTED, State.RECOVERED);
+		counter.transitionAt(7, State.INFECTED, State.RECOVERED);
+		counter.advanceTo(4);
+		assertEquals(10, counter.count(State.INFECTED));
+		counter.advanceTo(6);
+		assertEquals(1, counter.count(State.RECOVERED));
+		counter.advanceTo(7);
+		assertEquals(7, counter.count(State.INFECTED));
+		assertEquals(3, counter.count(State.RECOVERED));
+	}
+}
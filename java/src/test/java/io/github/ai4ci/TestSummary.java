@@ -0,0 +1,47 @@
+package io.github.ai4ci;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+
+import io.github.ai4ci.stats.Sampler;
+import io.github.ai4ci.stats.Summary;
+
+class TestSummary {
+
+	@Test
+	void testMerge() {
+		Sampler sampler = Sampler.withSeed(1L);
+		double[] values = new double[10000];
+		sampler.normals(values, 10, 2);
+		Summary all = new Summary();
+		Summary left = new Summary();
+		Summary right = new Summary();
+		for (int i=0; i<values.length; i++) {
+			all.add(values[i]);
+			(i < 3000 ? left : right).add(values[i]);
+		}
+		left.merge(right);
+		assertEquals(all.getCount(), left.getCount());
+		assertEquals(all.getMean(), left.getMean(), 1e-9);
+		assertEquals(all.getVariance(), left.getVariance(), 1e-9);
+		assertEquals(Arrays.stream(values).average().getAsDouble(), all.getMean(), 1e-9);
+	}
+
+	@Test
+	void testQuantiles() {
+		Summary summary = new Summary(0.01);
+		for (int i=1; i<=10000; i++) summary.add(i);
+		for (double q: new double[] {0.01, 0.25, 0.5, 0.75, 0.99}) {
+			double expected = 1 + q*9999;
+			assertEquals(expected, summary.quantile(q), expected*0.01+1);
+		}
+		Summary negative = new Summary();
+		for (int i=-10; i<=10; i++) negative.add(i);
+		assertEquals(0, negative.quantile(0.5), 1e-9);
+		assertEquals(-5, negative.quantile(0.25), 0.1);
+	}
+
+}
@@ -0,0 +1,74 @@
+package io.github.ai4ci;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.commons.lang3.tuple.Pair;
+import org.junit.jupiter.api.Test;
+
+import io.github.ai4ci.testModel.Configuration.OutbreakConfig;
+import io.github.ai4ci.testModel.Configuration.OutbreakConfig.OutbreakConfigBuilder;
+
+class TestSweep {
+
+	static OutbreakConfigBuilder defaultConfig() {
+		return OutbreakConfig.builder()
+				.populationSize(1000)
+				.meanContactProbability(0.5);
+	}
+
+	RSweep<OutbreakConfigBuilder,OutbreakConfig> sweep() {
+		return RSweep.of(() -> defaultConfig(), OutbreakConfigBuilder::build)
+				.named("sweep", OutbreakConfigBuilder::configurationName)
+				.range("R0", OutbreakConfigBuilder::R0, 1.0, 3.0, 3)
+				.intRange("connectedness", OutbreakConfigBuilder::connectedness, 10, 13);
+	}
+
+	@Test
+	void testFactorial() {
+		List<Pair<Integer,OutbreakConfig>> points = new ArrayList<>(sweep().factorial(2));
+		assertEquals(24, points.size());
+		assertEquals(0, points.get(0).getKey());
+		assertEquals(1, points.get(12).getKey());
+		assertEquals(1.0, points.get(0).getValue().getR0());
+		assertEquals(11, points.get(1).getValue().getConnectedness());
+		assertEquals(2.0, points.get(4).getValue().getR0());
+		assertEquals("sweep[R0=3.000;connectedness=13]", points.get(11).getValue().getConfigurationName());
+		Set<String> names = new HashSet<>();
+		points.forEach(p -> names.add(p.getValue().getConfigurationName()));
+		assertEquals(12, names.size());
+	}
+
+	@Test
+	void testLatinHypercube() {
+		int n = 50;
+		RSweep<OutbreakConfigBuilder,OutbreakConfig>.Design design = sweep().latinHypercube(1, n, 42L);
+		boolean[] strata = new boolean[n];
+		for (Pair<Integer,OutbreakConfig> p: design) {
+			double r0 = p.getValue().getR0();
+			assertTrue(r0 >= 1.0 && r0 < 3.0);
+			int stratum = (int) ((r0-1.0)/2.0*n);
+			assertFalse(strata[stratum]);
+			strata[stratum] = true;
+		}
+		for (long i = 0; i < 1000; i++) {
+			assertTrue(RSweep.permute(i, 1000, 7L) < 1000);
+		}
+		assertEquals(design.values(17), design.values(17));
+	}
+
+	@Test
+	void testSobol() {
+		RSweep<OutbreakConfigBuilder,OutbreakConfig>.Design design = sweep().sobol(1, 64);
+		List<Pair<Integer,OutbreakConfig>> points = new ArrayList<>(design);
+		assertEquals(64, points.size());
+		int[] halves = new int[2];
+		points.forEach(p -> halves[p.getValue().getR0() < 2.0 ? 0 : 1] += 1);
+		assertEquals(32, halves[0]);
+		assertEquals(design.values(5).get(0), points.get(5).getValue().getR0());
+	}
+}
@@ -0,0 +1,36 @@
+package io.github.ai4ci;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+
+import io.github.ai4ci.testModel.Configuration.AgentStatus.State;
+import io.github.ai4ci.testModel.Configuration.OutbreakConfig.TransmissionMode;
+import io.github.ai4ci.testModel.Outbreak;
+
+class TestTransmissionModes {
+
+	static Outbreak run(TransmissionMode mode) {
+		return SmallOutbreak.run(SmallOutbreak.config(2000).transmissionMode(mode).build(),
+				SmallOutbreak.parameters().build(), 0, 40).getSimulation();
+	}
+
+	@Test
+	void testPushSameAsPull() {
+		Outbreak push = run(TransmissionMode.PUSH);
+		Outbreak pull = run(TransmissionMode.PULL);
+		assertEquals(
+				pull.getNamedObservation(Outbreak.Observations.INCIDENCE, Long.class),
+				push.getNamedObservation(Outbreak.Observations.INCIDENCE, Long.class));
+		for (State state: State.values()) {
+			assertEquals(
+					pull.getNamedObservation(state, Long.class),
+					push.getNamedObservation(state, Long.class));
+		}
+		// which contact is the infector does not depend on the mode
+		assertEquals(pull.getRTimeseries(), push.getRTimeseries());
+		assertTrue(pull.getRTimeseries().stream().anyMatch(r -> r > 0));
+		// so switching between them as prevalence changes makes no difference
+		assertEquals(pull.getRTimeseries(), run(TransmissionMode.AUTO).getRTimeseries());
+	}
+}
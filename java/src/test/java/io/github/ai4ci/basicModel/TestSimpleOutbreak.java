@@ -0,0 +1,32 @@
+package io.github.ai4ci.basicModel;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+
+import io.github.ai4ci.basicModel.Person.Status;
+
+class TestSimpleOutbreak {
+
+	static long scan(SimpleOutbreak outbreak, Status status) {
+		return outbreak.getPeople().stream().filter(p -> p.getStatus().equals(status)).count();
+	}
+
+	@Test
+	void testCountsMatchPeople() {
+		SimpleOutbreak outbreak = new SimpleOutbreak(42L);
+		outbreak.population = 2000;
+		outbreak.setR0(3.0);
+		outbreak.start();
+		long recovered = 0;
+		for (int i = 0; i < 30 && outbreak.schedule.step(outbreak); i++) {
+			// recoveries are queued when people are infected and applied as
+			// the counts are read
+			assertEquals(scan(outbreak, Status.SUSCEPTIBLE), outbreak.getSusceptible());
+			assertEquals(scan(outbreak, Status.INFECTIOUS), outbreak.getInfectious());
+			assertEquals(scan(outbreak, Status.RECOVERED), outbreak.getRecovered());
+			recovered = outbreak.getRecovered();
+		}
+		assertTrue(recovered > outbreak.getImports());
+	}
+}
@@ -0,0 +1,43 @@
+package io.github.ai4ci.testModel;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.List;
+
+import org.apache.commons.lang3.SerializationUtils;
+import org.junit.jupiter.api.Test;
+
+import io.github.ai4ci.RObservedSimulation;
+import io.github.ai4ci.RShared;
+import io.github.ai4ci.SmallOutbreak;
+import io.github.ai4ci.flow.RSimulationFactory;
+import io.github.ai4ci.testModel.Configuration.OutbreakConfig;
+import io.github.ai4ci.testModel.Configuration.OutbreakParameters;
+
+class TestContactNetwork {
+
+	@Test
+	void testSharedByClones() {
+		RSimulationFactory<Outbreak,OutbreakConfig,OutbreakParameters,Person> factory = SmallOutbreak.factory();
+		RObservedSimulation<Outbreak,Person> prototype = SmallOutbreak.prototype(factory,
+				SmallOutbreak.config(200).build(), SmallOutbreak.parameters().build());
+		Outbreak outbreak = prototype.getSimulation();
+		ContactNetwork network = outbreak.getContactNetwork();
+		assertNotNull(network);
+
+		Outbreak clone = RShared.clone(outbreak);
+		assertNotSame(outbreak, clone);
+		assertSame(network, clone.getContactNetwork());
+		assertNotSame(outbreak.getAgentById(0), clone.getAgentById(0));
+
+		// as are execution bootstraps and replicate batches
+		assertSame(network, factory.bootstrapExecutions(prototype, 1).getSimulation().getContactNetwork());
+		List<RObservedSimulation<Outbreak,Person>> batch = factory.bootstrapBatch(prototype, 2, 3);
+		for (RObservedSimulation<Outbreak,Person> replicate: batch) {
+			assertSame(network, replicate.getSimulation().getContactNetwork());
+		}
+
+		// but not by a plain copy
+		assertNotSame(network, SerializationUtils.clone(outbreak).getContactNetwork());
+	}
+}
@@ -0,0 +1,37 @@
+package io.github.ai4ci.testModel;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+
+import io.github.ai4ci.SmallOutbreak;
+import io.github.ai4ci.testModel.Configuration.AgentStatus.State;
+
+class TestOutbreakAggregate {
+
+	static long scan(Outbreak outbreak, State state) {
+		return outbreak.streamAgents().filter(p -> p.getStatus().getState().equals(state)).count();
+	}
+
+	@Test
+	void testDisaggregateKeepsCounts() {
+		// aggregated once 20 are infected, and never disaggregated by the model
+		Outbreak outbreak = SmallOutbreak.run(
+				SmallOutbreak.config(1000).hybridUpperThreshold(20).hybridLowerThreshold(0).build(),
+				SmallOutbreak.parameters().build(), 0, 20).getSimulation();
+		OutbreakAggregate aggregate = outbreak.getAggregate();
+		assertNotNull(aggregate);
+		long day = outbreak.getSimTime();
+		long susceptible = aggregate.getSusceptible();
+		long infected = aggregate.getInfected(outbreak, day-1);
+		long recovered = aggregate.getRecovered(outbreak, day-1);
+		// people were infected while aggregated
+		assertTrue(scan(outbreak, State.SUSCEPTIBLE) > susceptible);
+
+		// as at the start of the next step
+		aggregate.disaggregate(outbreak);
+		assertEquals(susceptible, scan(outbreak, State.SUSCEPTIBLE));
+		assertEquals(infected, scan(outbreak, State.INFECTED));
+		assertEquals(recovered, scan(outbreak, State.RECOVERED));
+	}
+}